@@ -0,0 +1,182 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded admission of requests of every type. Request waits for one of the slots of its type
+ * in a queue of limited length for limited time, and is rejected if the queue is full or the wait is over,
+ * so the backend answers "overloaded" instead of accumulating requests it can't process in time.
+ * Limits are configured by strings "concurrency,queue length,max wait in milliseconds".
+ */
+public class AdmissionController {
+    private static final AdmissionController instance = new AdmissionController();
+
+    private final Map<BackendSessionInfo.TypeOfRequest, RequestQueue> queues = new EnumMap<>(BackendSessionInfo.TypeOfRequest.class);
+
+    private AdmissionController() {
+    }
+
+    public static AdmissionController getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return type of the request for admission, null for requests that are not limited
+     */
+    public static BackendSessionInfo.TypeOfRequest getRequestType(HttpServletRequest request) {
+        String type = request.getParameter("type");
+        if (type == null) {
+            return null;
+        }
+        switch (type) {
+            case "run":
+                String runConfiguration = request.getParameter("runConf");
+                if ("js".equals(runConfiguration) || "canvas".equals(runConfiguration)) {
+                    return BackendSessionInfo.TypeOfRequest.CONVERT_TO_JS;
+                }
+                return BackendSessionInfo.TypeOfRequest.RUN;
+            case "highlight":
+                return BackendSessionInfo.TypeOfRequest.HIGHLIGHT;
+            case "complete":
+                return BackendSessionInfo.TypeOfRequest.COMPLETE;
+            case "convertToKotlin":
+                return BackendSessionInfo.TypeOfRequest.CONVERT_TO_KOTLIN;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Highlighting and completion keep the editor responsive, so they get free environments before other requests.
+     */
+    public static boolean isInteractive(BackendSessionInfo.TypeOfRequest type) {
+        return type == BackendSessionInfo.TypeOfRequest.HIGHLIGHT || type == BackendSessionInfo.TypeOfRequest.COMPLETE;
+    }
+
+    /**
+     * @return false if the request is rejected, otherwise {@link #release} must be called after the request is processed
+     */
+    public boolean acquire(BackendSessionInfo.TypeOfRequest type) throws InterruptedException {
+        return getQueue(type).acquire();
+    }
+
+    public void release(BackendSessionInfo.TypeOfRequest type) {
+        getQueue(type).release();
+    }
+
+    /**
+     * @return seconds after which rejected request of this type should be retried
+     */
+    public int getRetryAfter(BackendSessionInfo.TypeOfRequest type) {
+        return (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(getQueue(type).maxWait));
+    }
+
+    /**
+     * @return milliseconds request of this type may wait before it is processed
+     */
+    public long getMaxWait(BackendSessionInfo.TypeOfRequest type) {
+        return getQueue(type).maxWait;
+    }
+
+    public synchronized Map<String, Map<String, Long>> getStatistics() {
+        Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+        for (Map.Entry<BackendSessionInfo.TypeOfRequest, RequestQueue> entry : queues.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue().getStatistics());
+        }
+        return result;
+    }
+
+    private synchronized RequestQueue getQueue(BackendSessionInfo.TypeOfRequest type) {
+        RequestQueue queue = queues.get(type);
+        if (queue == null) {
+            queue = new RequestQueue(getLimits(type));
+            queues.put(type, queue);
+        }
+        return queue;
+    }
+
+    private static String getLimits(BackendSessionInfo.TypeOfRequest type) {
+        switch (type) {
+            case RUN:
+                return BackendSettings.RUN_ADMISSION;
+            case CONVERT_TO_JS:
+                return BackendSettings.JS_ADMISSION;
+            case HIGHLIGHT:
+                return BackendSettings.HIGHLIGHT_ADMISSION;
+            case COMPLETE:
+                return BackendSettings.COMPLETE_ADMISSION;
+            default:
+                return BackendSettings.CONVERT_ADMISSION;
+        }
+    }
+
+    private static class RequestQueue {
+        private final Semaphore slots;
+        private final int maxQueueLength;
+        private final long maxWait;
+        private final AtomicLong waiting = new AtomicLong();
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        RequestQueue(String limits) {
+            String[] values = limits.split(",");
+            slots = new Semaphore(Integer.parseInt(values[0].trim()), true);
+            maxQueueLength = Integer.parseInt(values[1].trim());
+            maxWait = Long.parseLong(values[2].trim());
+        }
+
+        boolean acquire() throws InterruptedException {
+            if (!slots.tryAcquire()) {
+                if (waiting.incrementAndGet() > maxQueueLength) {
+                    waiting.decrementAndGet();
+                    rejected.incrementAndGet();
+                    return false;
+                }
+                try {
+                    if (!slots.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                        rejected.incrementAndGet();
+                        return false;
+                    }
+                } finally {
+                    waiting.decrementAndGet();
+                }
+            }
+            admitted.incrementAndGet();
+            return true;
+        }
+
+        void release() {
+            slots.release();
+        }
+
+        Map<String, Long> getStatistics() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            result.put("admitted", admitted.get());
+            result.put("rejected", rejected.get());
+            result.put("waiting", waiting.get());
+            return result;
+        }
+    }
+}
@@ -18,6 +18,8 @@ package org.jetbrains.webdemo.backend;
 
 import org.apache.naming.NamingContext;
 import org.jetbrains.webdemo.*;
+import org.jetbrains.webdemo.backend.enviroment.EnvironmentsPool;
+import org.jetbrains.webdemo.backend.executor.ExecutorsPool;
 
 import javax.naming.InitialContext;
 import javax.naming.NameNotFoundException;
@@ -53,7 +55,7 @@ public class BackendHttpServlet extends HttpServlet {
         Initializer.getInstance();
 
         try {
-            if (Initializer.getInstance().initJavaCoreEnvironment()) {
+            if (EnvironmentsPool.getInstance().initialize(BackendSettings.ENVIRONMENTS_POOL_SIZE)) {
                 ErrorWriter.writeInfoToConsole("Use \"help\" to look at all options");
                 new File(CommonSettings.LOGS_DIRECTORY).mkdirs();
             } else {
@@ -111,6 +113,76 @@ public class BackendHttpServlet extends HttpServlet {
             } catch (NameNotFoundException e) {
                 //Absent timeout variable in context.xml
             }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("cpu_time_limit", (String) envCtx.lookup("cpu_time_limit"));
+            } catch (NameNotFoundException e) {
+                //Absent cpu_time_limit variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("executors_pool_size", (String) envCtx.lookup("executors_pool_size"));
+            } catch (NameNotFoundException e) {
+                //Absent executors_pool_size variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("executor_max_runs", (String) envCtx.lookup("executor_max_runs"));
+            } catch (NameNotFoundException e) {
+                //Absent executor_max_runs variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("executor_idle_timeout", (String) envCtx.lookup("executor_idle_timeout"));
+            } catch (NameNotFoundException e) {
+                //Absent executor_idle_timeout variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("compilation_cache_size", (String) envCtx.lookup("compilation_cache_size"));
+            } catch (NameNotFoundException e) {
+                //Absent compilation_cache_size variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("psi_cache_size", (String) envCtx.lookup("psi_cache_size"));
+            } catch (NameNotFoundException e) {
+                //Absent psi_cache_size variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("highlighting_sessions_size", (String) envCtx.lookup("highlighting_sessions_size"));
+            } catch (NameNotFoundException e) {
+                //Absent highlighting_sessions_size variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("highlighting_session_idle_timeout", (String) envCtx.lookup("highlighting_session_idle_timeout"));
+            } catch (NameNotFoundException e) {
+                //Absent highlighting_session_idle_timeout variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("environments_pool_size", (String) envCtx.lookup("environments_pool_size"));
+            } catch (NameNotFoundException e) {
+                //Absent environments_pool_size variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("run_admission", (String) envCtx.lookup("run_admission"));
+            } catch (NameNotFoundException e) {
+                //Absent run_admission variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("js_admission", (String) envCtx.lookup("js_admission"));
+            } catch (NameNotFoundException e) {
+                //Absent js_admission variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("highlight_admission", (String) envCtx.lookup("highlight_admission"));
+            } catch (NameNotFoundException e) {
+                //Absent highlight_admission variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("complete_admission", (String) envCtx.lookup("complete_admission"));
+            } catch (NameNotFoundException e) {
+                //Absent complete_admission variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("convert_admission", (String) envCtx.lookup("convert_admission"));
+            } catch (NameNotFoundException e) {
+                //Absent convert_admission variable in context.xml
+            }
 
             return true;
         } catch (Throwable e) {
@@ -129,6 +201,8 @@ public class BackendHttpServlet extends HttpServlet {
     @Override
     public void destroy() {
         getServletContext().log("destroy() called");
+        ExecutorsPool.shutdownAll();
+        EnvironmentsPool.getInstance().dispose();
     }
 
 }
@@ -29,7 +29,20 @@ public class BackendSettings {
     public static String KOTLIN_LIBS_DIR = "";
     public static String KOTLIN_ERROR_MESSAGE = "Exception in Kotlin compiler: a bug was reported to developers.";
     public static int TIMEOUT_FOR_EXECUTION = 5000; //seconds
+    public static int CPU_TIME_LIMIT = 4000; //milliseconds
     public static int MAX_OUTPUT_SIZE = 100 * 1024;
-
-    public static String OUTPUT_DIRECTORY = "out";
+    public static int EXECUTORS_POOL_SIZE = 4;
+    public static int EXECUTOR_MAX_RUNS = 50;
+    public static int EXECUTOR_IDLE_TIMEOUT = 10 * 60 * 1000; //milliseconds
+    public static int COMPILATION_CACHE_SIZE = 32 * 1024 * 1024; //bytes
+    public static int PSI_CACHE_SIZE = 64 * 1024 * 1024; //bytes
+    public static int HIGHLIGHTING_SESSIONS_SIZE = 128 * 1024 * 1024; //bytes
+    public static int HIGHLIGHTING_SESSION_IDLE_TIMEOUT = 10 * 60 * 1000; //milliseconds
+    public static int ENVIRONMENTS_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    //concurrency,queue length,max wait in milliseconds
+    public static String RUN_ADMISSION = "4,16,5000";
+    public static String JS_ADMISSION = "4,32,5000";
+    public static String HIGHLIGHT_ADMISSION = "8,64,3000";
+    public static String COMPLETE_ADMISSION = "8,64,2000";
+    public static String CONVERT_ADMISSION = "2,8,5000";
 }
@@ -32,8 +32,35 @@ public class CommandRunner {
             BackendSettings.JAVA_EXECUTE = value;
         } else if (setting.equals("timeout")) {
             BackendSettings.TIMEOUT_FOR_EXECUTION = Integer.parseInt(value);
+        } else if (setting.equals("cpu_time_limit")) {
+            BackendSettings.CPU_TIME_LIMIT = Integer.parseInt(value);
+        } else if (setting.equals("executors_pool_size")) {
+            BackendSettings.EXECUTORS_POOL_SIZE = Integer.parseInt(value);
+        } else if (setting.equals("executor_max_runs")) {
+            BackendSettings.EXECUTOR_MAX_RUNS = Integer.parseInt(value);
+        } else if (setting.equals("executor_idle_timeout")) {
+            BackendSettings.EXECUTOR_IDLE_TIMEOUT = Integer.parseInt(value);
+        } else if (setting.equals("compilation_cache_size")) {
+            BackendSettings.COMPILATION_CACHE_SIZE = Integer.parseInt(value);
+        } else if (setting.equals("psi_cache_size")) {
+            BackendSettings.PSI_CACHE_SIZE = Integer.parseInt(value);
+        } else if (setting.equals("highlighting_sessions_size")) {
+            BackendSettings.HIGHLIGHTING_SESSIONS_SIZE = Integer.parseInt(value);
+        } else if (setting.equals("highlighting_session_idle_timeout")) {
+            BackendSettings.HIGHLIGHTING_SESSION_IDLE_TIMEOUT = Integer.parseInt(value);
+        } else if (setting.equals("environments_pool_size")) {
+            BackendSettings.ENVIRONMENTS_POOL_SIZE = Integer.parseInt(value);
+        } else if (setting.equals("run_admission")) {
+            BackendSettings.RUN_ADMISSION = value;
+        } else if (setting.equals("js_admission")) {
+            BackendSettings.JS_ADMISSION = value;
+        } else if (setting.equals("highlight_admission")) {
+            BackendSettings.HIGHLIGHT_ADMISSION = value;
+        } else if (setting.equals("complete_admission")) {
+            BackendSettings.COMPLETE_ADMISSION = value;
+        } else if (setting.equals("convert_admission")) {
+            BackendSettings.CONVERT_ADMISSION = value;
         } else if (setting.equals("app_output_dir")) {
-            BackendSettings.OUTPUT_DIRECTORY = value + File.separator + "out";
             CommonSettings.LOGS_DIRECTORY = value + File.separator + "logs";
             System.setProperty("kotlin.web.demo.log4j", value);
         } else if (setting.equals("is_test_version")) {
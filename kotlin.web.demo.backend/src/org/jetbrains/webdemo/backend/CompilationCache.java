@@ -0,0 +1,155 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend;
+
+import com.intellij.psi.PsiFile;
+import org.jetbrains.webdemo.backend.errorsDescriptors.ErrorDescriptor;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * LRU cache of compilation results by hash of project files and run configuration.
+ * Size of the cache is limited by {@link BackendSettings#COMPILATION_CACHE_SIZE} bytes.
+ */
+public class CompilationCache {
+    private static final CompilationCache instance = new CompilationCache();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final LinkedHashMap<String, CompilationResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private CompilationCache() {
+    }
+
+    public static CompilationCache getInstance() {
+        return instance;
+    }
+
+    public static String getKey(List<PsiFile> files, BackendSessionInfo.RunConfiguration configuration) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, configuration.name());
+            for (PsiFile file : files) {
+                update(digest, file.getName());
+                update(digest, file.getText());
+            }
+            return new BigInteger(1, digest.digest()).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    public synchronized CompilationResult get(String key) {
+        CompilationResult result = entries.get(key);
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    public synchronized void put(String key, CompilationResult result) {
+        if (result.getSize() > BackendSettings.COMPILATION_CACHE_SIZE) {
+            return;
+        }
+        CompilationResult previous = entries.put(key, result);
+        if (previous != null) {
+            size -= previous.getSize();
+        }
+        size += result.getSize();
+        Iterator<CompilationResult> iterator = entries.values().iterator();
+        while (size > BackendSettings.COMPILATION_CACHE_SIZE && iterator.hasNext()) {
+            size -= iterator.next().getSize();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        statistics.put("evictions", evictions);
+        statistics.put("entries", (long) entries.size());
+        statistics.put("size", size);
+        statistics.put("maxSize", (long) BackendSettings.COMPILATION_CACHE_SIZE);
+        return statistics;
+    }
+
+    public static class CompilationResult {
+        private final Map<String, List<ErrorDescriptor>> errors;
+        private final Map<String, byte[]> files;
+        private final String mainClass;
+        private final long size;
+
+        public CompilationResult(Map<String, List<ErrorDescriptor>> errors, Map<String, byte[]> files, String mainClass) {
+            this.errors = errors;
+            this.files = files;
+            this.mainClass = mainClass;
+            this.size = estimateSize();
+        }
+
+        public Map<String, List<ErrorDescriptor>> getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return class files by path relative to the output root, empty if project has compilation errors
+         */
+        public Map<String, byte[]> getFiles() {
+            return files;
+        }
+
+        public String getMainClass() {
+            return mainClass;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        private long estimateSize() {
+            //Rough estimation, objects headers and references are counted as 64 bytes
+            long result = 64 + (mainClass == null ? 0 : 2 * mainClass.length());
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                result += 64 + 2 * file.getKey().length() + file.getValue().length;
+            }
+            for (Map.Entry<String, List<ErrorDescriptor>> fileErrors : errors.entrySet()) {
+                result += 64 + 2 * fileErrors.getKey().length();
+                for (ErrorDescriptor error : fileErrors.getValue()) {
+                    result += 128 + 2 * String.valueOf(error.getMessage()).length();
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.webdemo.ProjectFile;
+
+import java.util.*;
+
+/**
+ * Keeps files and result of the last highlighting request of every client session, so files
+ * which were not changed since the previous request are not parsed again and unchanged project is not analyzed again.
+ * PSI belongs to the kotlin environment it was created in, so state is kept separately for every environment.
+ * Size is limited by {@link BackendSettings#HIGHLIGHTING_SESSIONS_SIZE} bytes, least recently used sessions are
+ * dropped first, and sessions idle for {@link BackendSettings#HIGHLIGHTING_SESSION_IDLE_TIMEOUT} are dropped too.
+ */
+public class HighlightingSessions {
+    //Rough estimation of PSI tree size for one character of the file, same as in PsiFilesCache
+    private static final int BYTES_PER_CHARACTER = 40;
+    private static final int MAX_SESSIONS_COUNT = 1000;
+    private static final HighlightingSessions INSTANCE = new HighlightingSessions();
+
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+
+    private HighlightingSessions() {
+    }
+
+    public static HighlightingSessions getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * State may be used only while environment of the project is checked out by current request.
+     */
+    public synchronized SessionState getState(String sessionId, Project project) {
+        long now = System.currentTimeMillis();
+        removeIdleSessions(now);
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            session = new Session();
+            sessions.put(sessionId, session);
+            evict();
+        }
+        session.lastAccessTime = now;
+        SessionState state = session.states.get(project);
+        if (state == null) {
+            state = new SessionState(project);
+            session.states.put(project, state);
+        }
+        return state;
+    }
+
+    public synchronized Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("sessions", (long) sessions.size());
+        statistics.put("size", size);
+        statistics.put("maxSize", (long) BackendSettings.HIGHLIGHTING_SESSIONS_SIZE);
+        statistics.put("evictions", evictions);
+        statistics.put("expirations", expirations);
+        return statistics;
+    }
+
+    /**
+     * State of removed session may still be used by a request, it is not counted any more.
+     */
+    private synchronized void resize(SessionState state, long newSize) {
+        if (state.removed) {
+            return;
+        }
+        size += newSize - state.size;
+        state.size = newSize;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Session> iterator = sessions.values().iterator();
+        while ((size > BackendSettings.HIGHLIGHTING_SESSIONS_SIZE || sessions.size() > MAX_SESSIONS_COUNT) && iterator.hasNext()) {
+            remove(iterator.next());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Sessions are ordered by access time, so idle ones are at the beginning.
+     */
+    private void removeIdleSessions(long now) {
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            if (now - session.lastAccessTime < BackendSettings.HIGHLIGHTING_SESSION_IDLE_TIMEOUT) {
+                break;
+            }
+            remove(session);
+            iterator.remove();
+            expirations++;
+        }
+    }
+
+    private void remove(Session session) {
+        for (SessionState state : session.states.values()) {
+            size -= state.size;
+            state.removed = true;
+        }
+    }
+
+    private static class Session {
+        private final Map<Project, SessionState> states = new IdentityHashMap<>();
+        private long lastAccessTime;
+    }
+
+    public static class SessionState {
+        private final Project project;
+        private Map<String, PsiFile> files = new HashMap<>();
+        private Map<String, String> texts = new HashMap<>();
+        private String configuration;
+        private String response;
+        //Guarded by HighlightingSessions
+        private long size = 0;
+        private boolean removed = false;
+
+        private SessionState(Project project) {
+            this.project = project;
+        }
+
+        /**
+         * Creates PSI only for files which were changed since the previous request.
+         * Result of the previous request is dropped if anything was changed.
+         */
+        public List<PsiFile> update(List<ProjectFile> projectFiles, List<String> readOnlyFileNames, String configuration) {
+            boolean changed = !Objects.equals(configuration, this.configuration) || projectFiles.size() != files.size();
+            Map<String, PsiFile> newFiles = new HashMap<>();
+            Map<String, String> newTexts = new HashMap<>();
+            List<PsiFile> result = new ArrayList<>();
+            for (ProjectFile projectFile : projectFiles) {
+                PsiFile psiFile = files.get(projectFile.getName());
+                if (psiFile == null || !projectFile.getText().equals(texts.get(projectFile.getName()))) {
+                    psiFile = PsiFilesCache.getInstance().getFile(project, projectFile.getName(), projectFile.getText(),
+                            readOnlyFileNames.contains(projectFile.getName()));
+                    changed = true;
+                }
+                newFiles.put(projectFile.getName(), psiFile);
+                newTexts.put(projectFile.getName(), projectFile.getText());
+                result.add(psiFile);
+            }
+            files = newFiles;
+            texts = newTexts;
+            this.configuration = configuration;
+            if (changed) {
+                response = null;
+            }
+            INSTANCE.resize(this, getSize());
+            return result;
+        }
+
+        /**
+         * @return response for the files passed to the last {@link #update} or null if they should be analyzed
+         */
+        public String getResponse() {
+            return response;
+        }
+
+        public void setResponse(String response) {
+            this.response = response;
+            INSTANCE.resize(this, getSize());
+        }
+
+        private long getSize() {
+            long result = 64;
+            for (String text : texts.values()) {
+                result += 64 + (long) text.length() * BYTES_PER_CHARACTER;
+            }
+            if (response != null) {
+                result += 2L * response.length();
+            }
+            return result;
+        }
+    }
+}
@@ -16,9 +16,6 @@
 
 package org.jetbrains.webdemo.backend;
 
-import com.intellij.openapi.application.ApplicationManager;
-import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
-import org.jetbrains.webdemo.ErrorWriter;
 import org.jetbrains.webdemo.backend.enviroment.EnvironmentManager;
 
 import java.io.File;
@@ -29,7 +26,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 public class Initializer {
-    private static EnvironmentManager environmentManager = new EnvironmentManager();
     private static Initializer INITIALIZER = new Initializer();
 
     public static Initializer getInstance() {
@@ -37,30 +33,7 @@ public class Initializer {
     }
 
     public static void reinitializeJavaEnvironment() {
-        ApplicationManager.setApplication(
-                INITIALIZER.getEnvironmentManager().getEnvironment().getApplication(),
-                INITIALIZER.getEnvironmentManager().getRegistry(),
-                INITIALIZER.getEnvironmentManager().getDisposable()
-        );
-    }
-
-    public EnvironmentManager getEnvironmentManager() {
-        return environmentManager;
-    }
-
-    public static void setEnvironmentManager(EnvironmentManager newEnvironmentManager) {
-        environmentManager = newEnvironmentManager;
-    }
-
-    public boolean initJavaCoreEnvironment() {
-        try {
-            environmentManager.getEnvironment();
-        } catch (Throwable e) {
-            ErrorWriter.writeExceptionToConsole("Impossible to init jetCoreEnvironment", e);
-            return false;
-        }
-
-        return true;
+        EnvironmentManager.restoreApplication();
     }
 
     public void initializeExecutorsPolicyFile() throws IOException {
@@ -72,9 +45,4 @@ public class Initializer {
             policyFile.write(policyFileContent);
         }
     }
-
-
-    public KotlinCoreEnvironment getEnvironment() {
-        return getEnvironmentManager().getEnvironment();
-    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProgressIndicator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Highlighting and completion requests being processed for every client session.
+ * Only the result of the latest request matters to the editor, so a new request cancels
+ * the previous one of the same session, type and file: request which waits for admission is dropped,
+ * analysis which is already running is stopped by the compiler's cancellation checks.
+ */
+public class InteractiveRequests {
+    private static final InteractiveRequests INSTANCE = new InteractiveRequests();
+
+    private final Map<String, Request> requests = new HashMap<>();
+    private final AtomicLong superseded = new AtomicLong();
+
+    private InteractiveRequests() {
+    }
+
+    public static InteractiveRequests getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Cancels previous request with the same key, {@link #finish} must be called after the request is processed.
+     */
+    public synchronized Request start(String sessionId, BackendSessionInfo.TypeOfRequest type, String fileName) {
+        String key = sessionId + "/" + type.name() + (fileName != null ? "/" + fileName : "");
+        Request request = new Request(key);
+        Request previous = requests.put(key, request);
+        if (previous != null) {
+            previous.indicator.cancel();
+            superseded.incrementAndGet();
+        }
+        return request;
+    }
+
+    public synchronized void finish(Request request) {
+        if (requests.get(request.key) == request) {
+            requests.remove(request.key);
+        }
+    }
+
+    public synchronized Map<String, Long> getStatistics() {
+        Map<String, Long> result = new HashMap<>();
+        result.put("inProgress", (long) requests.size());
+        result.put("superseded", superseded.get());
+        return result;
+    }
+
+    public static class Request {
+        private final String key;
+        private final ProgressIndicator indicator = new EmptyProgressIndicator();
+
+        private Request(String key) {
+            this.key = key;
+        }
+
+        public boolean isSuperseded() {
+            return indicator.isCanceled();
+        }
+
+        /**
+         * Analysis should run under this indicator to be stopped when the request is superseded.
+         */
+        public ProgressIndicator getIndicator() {
+            return indicator;
+        }
+    }
+}
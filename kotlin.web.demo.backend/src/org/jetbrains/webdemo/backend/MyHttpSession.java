@@ -16,47 +16,86 @@
 
 package org.jetbrains.webdemo.backend;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.psi.PsiFile;
 import org.jetbrains.webdemo.*;
+import org.jetbrains.webdemo.backend.enviroment.EnvironmentManager;
+import org.jetbrains.webdemo.backend.enviroment.EnvironmentsPool;
 import org.jetbrains.webdemo.backend.responseHelpers.*;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class MyHttpSession {
     private final BackendSessionInfo sessionInfo;
     private HttpServletRequest request;
     private HttpServletResponse response;
     private Project currentProject;
+    private com.intellij.openapi.project.Project project;
+    private EnvironmentManager environmentManager;
     private ObjectMapper objectMapper = new ObjectMapper();
+    private Map<String, String> bodyParameters;
+    private Project bodyProject;
 
     public MyHttpSession(BackendSessionInfo info) {
         this.sessionInfo = info;
     }
 
     public void handle(final HttpServletRequest request, final HttpServletResponse response) {
+        BackendSessionInfo.TypeOfRequest admittedType = null;
+        InteractiveRequests.Request interactiveRequest = null;
         try {
             this.request = request;
             this.response = response;
-            switch (request.getParameter("type")) {
-                case ("run"):
-                    sendExecutorResult();
-                    break;
-                case ("highlight"):
-                    sendHighlightingResult();
-                    break;
-                case ("convertToKotlin"):
-                    sessionInfo.setType(BackendSessionInfo.TypeOfRequest.CONVERT_TO_KOTLIN);
-                    sendConversationResult();
-                    break;
-                case ("complete"):
-                    sessionInfo.setType(BackendSessionInfo.TypeOfRequest.COMPLETE);
-                    sendCompletionResult();
-                    break;
+            BackendSessionInfo.TypeOfRequest requestType = AdmissionController.getRequestType(request);
+            long admissionDeadline = System.currentTimeMillis() + (requestType != null ? AdmissionController.getInstance().getMaxWait(requestType) : 0);
+            if (AdmissionController.isInteractive(requestType) && request.getRequestedSessionId() != null) {
+                interactiveRequest = InteractiveRequests.getInstance().start(request.getRequestedSessionId(), requestType,
+                        getParameter("filename"));
+            }
+            if (requestType != null) {
+                if (!AdmissionController.getInstance().acquire(requestType)) {
+                    writeOverloadedResponse(requestType);
+                    return;
+                }
+                admittedType = requestType;
+            }
+            //Environment is waited for within the same budget as admission
+            environmentManager = EnvironmentsPool.getInstance().checkout(AdmissionController.isInteractive(requestType),
+                    admissionDeadline - System.currentTimeMillis());
+            if (environmentManager == null) {
+                writeOverloadedResponse(requestType);
+                return;
+            }
+            project = environmentManager.getEnvironment().getProject();
+            if (interactiveRequest != null) {
+                if (interactiveRequest.isSuperseded()) {
+                    writeResponse("", HttpServletResponse.SC_NO_CONTENT);
+                    return;
+                }
+                ProgressManager.getInstance().runProcess(new Runnable() {
+                    @Override
+                    public void run() {
+                        processRequest();
+                    }
+                }, interactiveRequest.getIndicator());
+            } else {
+                processRequest();
+            }
+        } catch (ProcessCanceledException e) {
+            //Newer request of the same session is processed instead, its result will be shown
+            if (!response.isCommitted()) {
+                writeResponse("", HttpServletResponse.SC_NO_CONTENT);
             }
         } catch (Throwable e) {
             e.printStackTrace();
@@ -66,24 +105,129 @@ public class MyHttpSession {
                 ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, "UNKNOWN", "unknown", "null");
             }
             writeResponse(ResponseUtils.getErrorInJson("Internal server error"), HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } finally {
+            checkinEnvironment();
+            if (admittedType != null) {
+                AdmissionController.getInstance().release(admittedType);
+            }
+            if (interactiveRequest != null) {
+                InteractiveRequests.getInstance().finish(interactiveRequest);
+            }
+        }
+    }
+
+    private void writeOverloadedResponse(BackendSessionInfo.TypeOfRequest requestType) {
+        int retryAfter = requestType != null ? AdmissionController.getInstance().getRetryAfter(requestType) : 1;
+        response.setHeader("Retry-After", String.valueOf(retryAfter));
+        writeResponse(ResponseUtils.getErrorInJson("Server is overloaded, please try again later"), HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Environment is returned as soon as the request doesn't need it, e.g. before compiled program is run.
+     */
+    private void checkinEnvironment() {
+        if (environmentManager != null) {
+            EnvironmentsPool.getInstance().checkin(environmentManager);
+            environmentManager = null;
+        }
+    }
+
+    private void processRequest() {
+        switch (request.getParameter("type")) {
+            case ("run"):
+                sendExecutorResult();
+                break;
+            case ("highlight"):
+                sendHighlightingResult();
+                break;
+            case ("convertToKotlin"):
+                sessionInfo.setType(BackendSessionInfo.TypeOfRequest.CONVERT_TO_KOTLIN);
+                sendConversationResult();
+                break;
+            case ("complete"):
+                sessionInfo.setType(BackendSessionInfo.TypeOfRequest.COMPLETE);
+                sendCompletionResult();
+                break;
+        }
+    }
+
+    /**
+     * Frontend server sends parameters as fields of JSON object in the request body,
+     * other clients may send them as form parameters.
+     */
+    private String getParameter(String name) throws IOException {
+        if (isJsonRequest()) {
+            readJsonBody();
+            return bodyParameters.get(name);
+        }
+        return request.getParameter(name);
+    }
+
+    private Project readProject() throws IOException {
+        if (isJsonRequest()) {
+            readJsonBody();
+            return bodyProject;
+        }
+        return objectMapper.readValue(request.getParameter("project"), Project.class);
+    }
+
+    private boolean isJsonRequest() {
+        return request.getContentType() != null && request.getContentType().startsWith("application/json");
+    }
+
+    /**
+     * Project is parsed directly from the request stream, without reading the body into a string.
+     */
+    private void readJsonBody() throws IOException {
+        if (bodyParameters != null) return;
+        bodyParameters = new HashMap<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Request body should be JSON object", parser.getCurrentLocation());
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (name.equals("project")) {
+                    bodyProject = objectMapper.readValue(parser, Project.class);
+                } else if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                } else if (value != JsonToken.VALUE_NULL) {
+                    bodyParameters.put(name, parser.getText());
+                }
+            }
         }
     }
 
     private void sendConversationResult() {
-        writeResponse(new WebDemoJavaToKotlinConverter(sessionInfo).getResult(request.getParameter("text"),
-                Initializer.getInstance().getEnvironment().getProject()), HttpServletResponse.SC_OK);
+        try {
+            writeResponse(new WebDemoJavaToKotlinConverter(sessionInfo).getResult(getParameter("text"),
+                    project), HttpServletResponse.SC_OK);
+        } catch (IOException e) {
+            writeResponse("Can't get parameters", HttpServletResponse.SC_BAD_REQUEST);
+        }
     }
 
     private void sendExecutorResult() {
+        StreamingRunResponse stream = null;
         try {
-            currentProject = objectMapper.readValue(request.getParameter("project"), Project.class);
+            currentProject = readProject();
             List<PsiFile> psiFiles = createProjectPsiFiles(currentProject);
             sessionInfo.setRunConfiguration(currentProject.confType);
             if (sessionInfo.getRunConfiguration().equals(BackendSessionInfo.RunConfiguration.JAVA) || sessionInfo.getRunConfiguration().equals(BackendSessionInfo.RunConfiguration.JUNIT)) {
                 sessionInfo.setType(BackendSessionInfo.TypeOfRequest.RUN);
 
-                CompileAndRunExecutor responseForCompilation = new CompileAndRunExecutor(psiFiles, Initializer.getInstance().getEnvironment().getProject(), sessionInfo, currentProject.args);
-                writeResponse(responseForCompilation.getResult(), HttpServletResponse.SC_OK);
+                //JUnit results are shown only after all tests are finished, so there is nothing to stream
+                if ("true".equals(request.getParameter("stream")) && sessionInfo.getRunConfiguration().equals(BackendSessionInfo.RunConfiguration.JAVA)) {
+                    stream = new StreamingRunResponse(response);
+                    CompileAndRunExecutor responseForCompilation = new CompileAndRunExecutor(psiFiles, project, sessionInfo, currentProject.args, stream);
+                    responseForCompilation.setCompiledCallback(checkinCallback());
+                    stream.writeElements(responseForCompilation.getResult());
+                } else {
+                    CompileAndRunExecutor responseForCompilation = new CompileAndRunExecutor(psiFiles, project, sessionInfo, currentProject.args);
+                    responseForCompilation.setCompiledCallback(checkinCallback());
+                    writeResponse(responseForCompilation.getResult(), HttpServletResponse.SC_OK);
+                }
             } else {
                 sessionInfo.setType(BackendSessionInfo.TypeOfRequest.CONVERT_TO_JS);
                 writeResponse(new JsConverter(sessionInfo).getResult(psiFiles, sessionInfo, currentProject.args), HttpServletResponse.SC_OK);
@@ -93,24 +237,37 @@ public class MyHttpSession {
         } catch (NullPointerException e) {
             writeResponse("Can't get parameters", HttpServletResponse.SC_BAD_REQUEST);
         } catch (Exception e){
-            writeResponse(e.getMessage(), HttpServletResponse.SC_BAD_REQUEST);
+            if (stream != null) {
+                stream.writeError(e.getMessage());
+            } else {
+                writeResponse(e.getMessage(), HttpServletResponse.SC_BAD_REQUEST);
+            }
         }
     }
 
+    private Runnable checkinCallback() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                checkinEnvironment();
+            }
+        };
+    }
+
     private List<PsiFile> createProjectPsiFiles(Project example) {
         List<PsiFile> result = new ArrayList<>();
         for (ProjectFile file : example.files) {
-            result.add(JetPsiFactoryUtil.createFile(Initializer.getInstance().getEnvironment().getProject(), file.getName(), file.getText()));
+            result.add(PsiFilesCache.getInstance().getFile(project, file.getName(), file.getText(), example.readOnlyFileNames.contains(file.getName())));
         }
         return result;
     }
 
     public void sendCompletionResult() {
         try {
-            String fileName = request.getParameter("filename");
-            int line = Integer.parseInt(request.getParameter("line"));
-            int ch = Integer.parseInt(request.getParameter("ch"));
-            currentProject = objectMapper.readValue(request.getParameter("project"), Project.class);
+            String fileName = getParameter("filename");
+            int line = Integer.parseInt(getParameter("line"));
+            int ch = Integer.parseInt(getParameter("ch"));
+            currentProject = readProject();
             List<PsiFile> psiFiles = createProjectPsiFiles(currentProject);
             sessionInfo.setRunConfiguration(currentProject.confType);
 
@@ -126,12 +283,25 @@ public class MyHttpSession {
     public void sendHighlightingResult() {
         sessionInfo.setType(BackendSessionInfo.TypeOfRequest.HIGHLIGHT);
         try {
-            currentProject = objectMapper.readValue(request.getParameter("project"), Project.class);
+            currentProject = readProject();
             sessionInfo.setRunConfiguration(currentProject.confType);
-            List<PsiFile> psiFiles = createProjectPsiFiles(currentProject);
-            JsonResponseForHighlighting responseForHighlighting = new JsonResponseForHighlighting(psiFiles, sessionInfo, Initializer.getInstance().getEnvironment().getProject());
-            String response = responseForHighlighting.getResult();
-            response = response.replaceAll("\\n", "");
+            HighlightingSessions.SessionState state = null;
+            List<PsiFile> psiFiles;
+            if (request.getRequestedSessionId() != null) {
+                state = HighlightingSessions.getInstance().getState(request.getRequestedSessionId(), project);
+                psiFiles = state.update(currentProject.files, currentProject.readOnlyFileNames, currentProject.confType);
+            } else {
+                psiFiles = createProjectPsiFiles(currentProject);
+            }
+            String response = state != null ? state.getResponse() : null;
+            if (response == null) {
+                JsonResponseForHighlighting responseForHighlighting = new JsonResponseForHighlighting(psiFiles, sessionInfo, project);
+                response = responseForHighlighting.getResult();
+                response = response.replaceAll("\\n", "");
+                if (state != null) {
+                    state.setResponse(response);
+                }
+            }
             writeResponse(response, HttpServletResponse.SC_OK);
         } catch (IOException e) {
             writeResponse("Can't parse project", HttpServletResponse.SC_BAD_REQUEST);
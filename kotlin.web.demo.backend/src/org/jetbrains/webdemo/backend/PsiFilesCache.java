@@ -0,0 +1,141 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend;
+
+import com.intellij.openapi.project.Project;
+import org.jetbrains.kotlin.psi.JetFile;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * LRU cache of parsed files by file name and content hash, used for read-only and hidden example files
+ * which are sent with every request. Size is limited by {@link BackendSettings#PSI_CACHE_SIZE} bytes.
+ * Files which are not marked as read-only are cached only when they are seen for the second time,
+ * so files edited by user don't evict example files.
+ * PSI belongs to the kotlin environment it was created in, so files are cached separately for every environment.
+ */
+public class PsiFilesCache {
+    //Rough estimation of PSI tree size for one character of the file
+    private static final int BYTES_PER_CHARACTER = 40;
+    private static final int MAX_SEEN_FILES_COUNT = 10000;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final PsiFilesCache INSTANCE = new PsiFilesCache();
+
+    private final LinkedHashMap<FileKey, JetFile> files = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<FileKey> seenFiles = Collections.newSetFromMap(new LinkedHashMap<FileKey, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileKey, Boolean> eldest) {
+            return size() > MAX_SEEN_FILES_COUNT;
+        }
+    });
+    private long size = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private PsiFilesCache() {
+    }
+
+    public static PsiFilesCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returned file must be used only while environment of the project is checked out by current request.
+     */
+    public JetFile getFile(Project project, String name, String text, boolean readOnly) {
+        FileKey key = new FileKey(project, name, getHash(text));
+        synchronized (this) {
+            JetFile file = files.get(key);
+            if (file != null) {
+                hits++;
+                return file;
+            }
+            misses++;
+        }
+
+        JetFile file = JetPsiFactoryUtil.createFile(project, name, text);
+        long fileSize = getSize(text);
+        synchronized (this) {
+            if (fileSize > BackendSettings.PSI_CACHE_SIZE || (!readOnly && seenFiles.add(key))) {
+                return file;
+            }
+            seenFiles.remove(key);
+            if (files.put(key, file) == null) {
+                size += fileSize;
+            }
+            Iterator<JetFile> iterator = files.values().iterator();
+            while (size > BackendSettings.PSI_CACHE_SIZE && iterator.hasNext()) {
+                size -= getSize(iterator.next().getText());
+                iterator.remove();
+                evictions++;
+            }
+        }
+        return file;
+    }
+
+    public synchronized Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        statistics.put("evictions", evictions);
+        statistics.put("entries", (long) files.size());
+        statistics.put("size", size);
+        statistics.put("maxSize", (long) BackendSettings.PSI_CACHE_SIZE);
+        return statistics;
+    }
+
+    private static long getSize(String text) {
+        return 64 + (long) text.length() * BYTES_PER_CHARACTER;
+    }
+
+    private static String getHash(String text) {
+        try {
+            return new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(text.getBytes(UTF8))).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class FileKey {
+        private final Project project;
+        private final String name;
+        private final String hash;
+
+        FileKey(Project project, String name, String hash) {
+            this.project = project;
+            this.name = name;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileKey)) return false;
+            FileKey other = (FileKey) o;
+            return project == other.project && name.equals(other.name) && hash.equals(other.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(project) + name.hashCode()) + hash.hashCode();
+        }
+    }
+}
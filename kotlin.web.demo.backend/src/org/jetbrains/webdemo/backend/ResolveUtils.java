@@ -31,20 +31,38 @@ import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.kotlin.resolve.BindingTrace;
 import org.jetbrains.kotlin.resolve.jvm.TopDownAnalyzerFacadeForJVM;
 
+import java.util.Collections;
 import java.util.List;
 
 public class ResolveUtils {
+    private static final String WARM_UP_PROGRAM = "import java.util.*\n" +
+            "fun main(args: Array<String>) {\n" +
+            "    val list = ArrayList<String>(listOf(\"a\", \"b\"))\n" +
+            "    val map = HashMap<String, Int>()\n" +
+            "    for (s in list) map[s] = s.length()\n" +
+            "    println(map.keySet().joinToString())\n" +
+            "}";
 
     private ResolveUtils() {
     }
 
+    /**
+     * Analyzes a small program using common JDK and stdlib declarations, so that classpath index and
+     * binary class caches shared by all requests are filled at startup instead of during the first requests.
+     */
+    public static void warmUp(Project project) {
+        analyzeFiles(Collections.singletonList(JetPsiFactoryUtil.createFile(project, "warmUp.kt", WARM_UP_PROGRAM)), project);
+    }
+
     public static BindingContext getBindingContext(@NotNull List<JetFile> files, Project project) {
-        AnalysisResult analyzeExhaust = analyzeFile(files, project);
+        AnalysisResult analyzeExhaust = analyzeFiles(files, project);
         return analyzeExhaust.getBindingContext();
     }
 
-    public static GenerationState getGenerationState(@NotNull List<JetFile> files, Project project) {
-        AnalysisResult analyzeExhaust = analyzeFile(files, project);
+    /**
+     * Creates generation state from the result of {@link #analyzeFiles}, so files are not analyzed twice.
+     */
+    public static GenerationState getGenerationState(@NotNull List<JetFile> files, Project project, @NotNull AnalysisResult analyzeExhaust) {
         return new GenerationState(
                 project,
                 ClassBuilderFactories.BINARIES,
@@ -54,7 +72,7 @@ public class ResolveUtils {
         );
     }
 
-    private static AnalysisResult analyzeFile(@NotNull List<JetFile> files, Project project) {
+    public static AnalysisResult analyzeFiles(@NotNull List<JetFile> files, Project project) {
 
         ModuleContext moduleContext = TopDownAnalyzerFacadeForJVM.createContextWithSealedModule(project);
 
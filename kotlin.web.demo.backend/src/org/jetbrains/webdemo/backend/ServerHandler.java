@@ -18,12 +18,14 @@ package org.jetbrains.webdemo.backend;
 
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.webdemo.ErrorWriter;
+import org.jetbrains.webdemo.JsonUtils;
 import org.jetbrains.webdemo.ResponseUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class ServerHandler {
@@ -33,6 +35,8 @@ public class ServerHandler {
 
         if (request.getQueryString() != null && request.getQueryString().equals("test")) {
             response.setStatus(HttpServletResponse.SC_OK);
+        } else if (request.getQueryString() != null && request.getQueryString().equals("stats")) {
+            sendStatistics(request, response);
         } else {
             BackendSessionInfo sessionInfo;
             try {
@@ -48,6 +52,16 @@ public class ServerHandler {
         }
     }
 
+    private void sendStatistics(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("compilationCache", CompilationCache.getInstance().getStatistics());
+        statistics.put("psiCache", PsiFilesCache.getInstance().getStatistics());
+        statistics.put("highlightingSessions", HighlightingSessions.getInstance().getStatistics());
+        statistics.put("admission", AdmissionController.getInstance().getStatistics());
+        statistics.put("interactiveRequests", InteractiveRequests.getInstance().getStatistics());
+        ResponseUtils.writeResponse(request, response, JsonUtils.toJson(statistics), HttpServletResponse.SC_OK);
+    }
+
     @Nullable
     private BackendSessionInfo setSessionInfo(final HttpSession session, String originUrl) {
         BackendSessionInfo sessionInfo = new BackendSessionInfo(session.getId());
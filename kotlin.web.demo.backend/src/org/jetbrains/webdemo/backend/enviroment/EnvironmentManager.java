@@ -26,6 +26,7 @@ import com.intellij.codeInsight.runner.JavaMainMethodProvider;
 import com.intellij.core.CoreApplicationEnvironment;
 import com.intellij.mock.MockProject;
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.extensions.Extensions;
 import com.intellij.openapi.extensions.ExtensionsArea;
 import com.intellij.openapi.fileTypes.ContentBasedFileSubstitutor;
@@ -70,8 +71,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * All environments are projects of one application shared by the JVM: application, file type registry
+ * and root area extensions are global, so they are created and registered once.
+ */
 public class EnvironmentManager {
     private static File KOTLIN_RUNTIME = initializeKotlinRuntime();
+    private static final Object GLOBAL_LOCK = new Object();
+    private static boolean globalExtensionsRegistered = false;
+    private static EnvironmentManager applicationOwner;
     private Getter<FileTypeRegistry> registry;
     private KotlinCoreEnvironment environment;
     private Disposable disposable = new Disposable() {
@@ -151,16 +159,31 @@ public class EnvironmentManager {
 
     @NotNull
     public KotlinCoreEnvironment getEnvironment() {
-        if (environment == null) {
-            environment = createEnvironment();
-
-            Extensions.getRootArea()
-                    .getExtensionPoint(ClassFileDecompilers.EP_NAME)
-                    .registerExtension(new JetClassFileDecompiler());
+        synchronized (GLOBAL_LOCK) {
+            if (environment == null) {
+                environment = createEnvironment();
+                registerGlobalExtensions();
+                if (applicationOwner == null || applicationOwner.environment.getApplication() != environment.getApplication()) {
+                    applicationOwner = this;
+                }
+            }
+            return environment;
+        }
+    }
 
-            //throw new IllegalStateException("Environment should be initialized before");
+    /**
+     * Makes the shared application global again if something has replaced it, e.g. JS translator.
+     */
+    public static void restoreApplication() {
+        synchronized (GLOBAL_LOCK) {
+            if (applicationOwner != null && ApplicationManager.getApplication() != applicationOwner.environment.getApplication()) {
+                ApplicationManager.setApplication(
+                        applicationOwner.environment.getApplication(),
+                        applicationOwner.registry,
+                        applicationOwner.disposable
+                );
+            }
         }
-        return environment;
     }
 
     public Disposable getDisposable() {
@@ -184,7 +207,8 @@ public class EnvironmentManager {
         configuration.put(JVMConfigurationKeys.DISABLE_PARAM_ASSERTIONS, arguments.noParamAssertions);
         configuration.put(JVMConfigurationKeys.DISABLE_CALL_ASSERTIONS, arguments.noCallAssertions);
 
-        KotlinCoreEnvironment environment = KotlinCoreEnvironment.createForTests(disposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+        //Unlike createForTests, doesn't clean root area and reuses application of the existing environments
+        KotlinCoreEnvironment environment = KotlinCoreEnvironment.createForProduction(disposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
         ((MockProject) environment.getProject()).registerService(NullableNotNullManager.class, new NullableNotNullManager() {
             @Override
             public boolean isNullable(@NotNull PsiModifierListOwner owner, boolean checkBases) {
@@ -202,19 +226,25 @@ public class EnvironmentManager {
             }
         });
 
+        registry = FileTypeRegistry.ourInstanceGetter;
+        return environment;
+    }
 
-        Extensions.getRootArea().getExtensionPoint(DefaultErrorMessages.Extension.EP_NAME).registerExtension(new DefaultErrorMessagesJvm());
-        Extensions.getRootArea().getExtensionPoint(DefaultErrorMessages.Extension.EP_NAME).registerExtension(new DefaultErrorMessagesJs());
-        Extensions.getRootArea().getExtensionPoint(DiagnosticsWithSuppression.SuppressStringProvider.EP_NAME).registerExtension(new SuppressNoBodyErrorsForNativeDeclarations());
-        Extensions.getRootArea().getExtensionPoint(DiagnosticsWithSuppression.SuppressStringProvider.EP_NAME).registerExtension(new SuppressUnusedParameterForJsNative());
+    private static void registerGlobalExtensions() {
+        if (globalExtensionsRegistered) return;
+        ExtensionsArea area = Extensions.getRootArea();
+        area.getExtensionPoint(DefaultErrorMessages.Extension.EP_NAME).registerExtension(new DefaultErrorMessagesJvm());
+        area.getExtensionPoint(DefaultErrorMessages.Extension.EP_NAME).registerExtension(new DefaultErrorMessagesJs());
+        area.getExtensionPoint(DiagnosticsWithSuppression.SuppressStringProvider.EP_NAME).registerExtension(new SuppressNoBodyErrorsForNativeDeclarations());
+        area.getExtensionPoint(DiagnosticsWithSuppression.SuppressStringProvider.EP_NAME).registerExtension(new SuppressUnusedParameterForJsNative());
 
-        registerExtensionPoints(Extensions.getRootArea());
+        registerExtensionPoints(area);
 
-        registry = FileTypeRegistry.ourInstanceGetter;
-        return environment;
+        area.getExtensionPoint(ClassFileDecompilers.EP_NAME).registerExtension(new JetClassFileDecompiler());
+        globalExtensionsRegistered = true;
     }
 
-    private void registerExtensionPoints(ExtensionsArea area) {
+    private static void registerExtensionPoints(ExtensionsArea area) {
         CoreApplicationEnvironment.registerExtensionPoint(area, ContentBasedFileSubstitutor.EP_NAME, ContentBasedFileSubstitutor.class);
         CoreApplicationEnvironment.registerExtensionPoint(area, BinaryFileStubBuilders.EP_NAME, FileTypeExtensionPoint.class);
         CoreApplicationEnvironment.registerExtensionPoint(area, FileContextProvider.EP_NAME, FileContextProvider.class);
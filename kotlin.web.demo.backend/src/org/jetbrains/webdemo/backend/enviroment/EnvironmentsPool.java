@@ -0,0 +1,140 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend.enviroment;
+
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.webdemo.ErrorWriter;
+import org.jetbrains.webdemo.backend.ResolveUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Kotlin environments with separate projects of one shared application, so requests can be analyzed in parallel.
+ * Environment is used by one request at a time: it should be taken by {@link #checkout(boolean, long)}
+ * and returned by {@link #checkin(EnvironmentManager)} after the request is processed.
+ * Free environment is given to priority requests first, but not indefinitely while other requests wait.
+ */
+public class EnvironmentsPool {
+    private static final EnvironmentsPool INSTANCE = new EnvironmentsPool();
+    private static final int MAX_PRIORITY_CHECKOUTS_IN_ROW = 4;
+
+    private final List<EnvironmentManager> environments = new ArrayList<>();
+    private final Deque<EnvironmentManager> freeEnvironments = new ArrayDeque<>();
+    private int priorityWaiters = 0;
+    private int waiters = 0;
+    private int priorityCheckoutsInRow = 0;
+
+    private EnvironmentsPool() {
+    }
+
+    public static EnvironmentsPool getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized boolean initialize(int size) {
+        try {
+            for (int i = environments.size(); i < Math.max(size, 1); i++) {
+                EnvironmentManager environmentManager = new EnvironmentManager();
+                environmentManager.getEnvironment();
+                try {
+                    ResolveUtils.warmUp(environmentManager.getEnvironment().getProject());
+                } catch (Throwable e) {
+                    ErrorWriter.writeExceptionToConsole("Warm up of kotlin compiler failed", e);
+                }
+                environments.add(environmentManager);
+                freeEnvironments.add(environmentManager);
+            }
+        } catch (Throwable e) {
+            ErrorWriter.writeExceptionToConsole("Impossible to init jetCoreEnvironment", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param timeout milliseconds to wait for a free environment
+     * @return free environment or null if there was no one during the timeout
+     */
+    public synchronized EnvironmentManager checkout(boolean priority, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        if (priority) {
+            priorityWaiters++;
+        } else {
+            waiters++;
+        }
+        try {
+            while (!canCheckout(priority)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    //Other waiters may be allowed to take environment now
+                    notifyAll();
+                    return null;
+                }
+                wait(remaining);
+            }
+        } finally {
+            if (priority) {
+                priorityWaiters--;
+            } else {
+                waiters--;
+            }
+        }
+        if (priority) {
+            priorityCheckoutsInRow = waiters > 0 ? priorityCheckoutsInRow + 1 : 0;
+        } else {
+            priorityCheckoutsInRow = 0;
+        }
+        EnvironmentManager environmentManager = freeEnvironments.poll();
+        if (!freeEnvironments.isEmpty()) {
+            //Counters have changed, waiters that were not allowed to take environment may be allowed now
+            notifyAll();
+        }
+        return environmentManager;
+    }
+
+    /**
+     * Priority requests get environment before waiting ordinary ones at most {@link #MAX_PRIORITY_CHECKOUTS_IN_ROW} times,
+     * then the next free environment is given to an ordinary request.
+     */
+    private boolean canCheckout(boolean priority) {
+        if (freeEnvironments.isEmpty()) {
+            return false;
+        }
+        boolean priorityLimitReached = priorityCheckoutsInRow >= MAX_PRIORITY_CHECKOUTS_IN_ROW;
+        if (priority) {
+            return waiters == 0 || !priorityLimitReached;
+        } else {
+            return priorityWaiters == 0 || priorityLimitReached;
+        }
+    }
+
+    public synchronized void checkin(EnvironmentManager environmentManager) {
+        freeEnvironments.add(environmentManager);
+        notifyAll();
+    }
+
+    public synchronized void dispose() {
+        for (EnvironmentManager environmentManager : environments) {
+            Disposer.dispose(environmentManager.getDisposable());
+        }
+        environments.clear();
+        freeEnvironments.clear();
+    }
+}
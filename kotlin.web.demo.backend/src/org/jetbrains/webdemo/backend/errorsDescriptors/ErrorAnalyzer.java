@@ -16,6 +16,7 @@
 
 package org.jetbrains.webdemo.backend.errorsDescriptors;
 
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -52,10 +53,6 @@ public class ErrorAnalyzer {
     }
 
     public Map<String, List<ErrorDescriptor>> getAllErrors() {
-        final Map<String, List<ErrorDescriptor>> errors = new HashMap<>();
-        for(PsiFile psiFile : currentPsiFiles){
-            errors.put(psiFile.getName(), getErrorsByVisitor(psiFile));
-        }
         sessionInfo.getTimeManager().saveCurrentTime();
         BindingContext bindingContext;
         try {
@@ -63,13 +60,26 @@ public class ErrorAnalyzer {
                     sessionInfo.getRunConfiguration().equals(BackendSessionInfo.RunConfiguration.JUNIT)) {
                 bindingContext = ResolveUtils.getBindingContext(convertList(currentPsiFiles), currentProject);
             } else {
-                bindingContext = WebDemoTranslatorFacade.analyzeProgramCode(convertList(currentPsiFiles), sessionInfo);
+                bindingContext = WebDemoTranslatorFacade.analyzeProgramCode(convertList(currentPsiFiles), currentProject, sessionInfo);
             }
 
+        } catch (ProcessCanceledException e) {
+            throw e;
         } catch (Throwable e) {
             ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, sessionInfo.getType(), sessionInfo.getOriginUrl(), BackendUtils.getPsiFilesContent(currentPsiFiles));
             throw new KotlinCoreException(e);
         }
+        return getAllErrors(bindingContext);
+    }
+
+    /**
+     * Collects errors using binding context of already analyzed files.
+     */
+    public Map<String, List<ErrorDescriptor>> getAllErrors(BindingContext bindingContext) {
+        final Map<String, List<ErrorDescriptor>> errors = new HashMap<>();
+        for(PsiFile psiFile : currentPsiFiles){
+            errors.put(psiFile.getName(), getErrorsByVisitor(psiFile));
+        }
         if (bindingContext != null) {
             getErrorsFromDiagnostics(bindingContext.getDiagnostics().all(), errors);
         }
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend.executor;
+
+import org.jetbrains.webdemo.ResponseUtils;
+import org.jetbrains.webdemo.backend.BackendSessionInfo;
+import org.jetbrains.webdemo.backend.BackendSettings;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sandboxed JVM running org.jetbrains.webdemo.executors.ExecutorServer.
+ * Protocol must be kept in sync with ExecutorServer.
+ */
+public class ExecutorProcess {
+    public static final String JAVA_COMMAND = "java";
+    public static final String JUNIT_COMMAND = "junit";
+    public static final int OUT_STREAM = 1;
+    public static final int ERR_STREAM = 2;
+    private static final int RESULT_FRAME = 0;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    //Executor heap is limited by -Xmx32m, so larger response means corrupted stream
+    private static final int MAX_RESPONSE_SIZE = 32 * 1024 * 1024;
+    private static final int MAX_CHAR_BYTES = 4;
+
+    private final Process process;
+    private final DataOutputStream requests;
+    private final DataInputStream responses;
+    private final InputStream errorStream;
+    private final List<String> errorOutput = new ArrayList<>();
+    private final ByteArrayOutputStream errorLine = new ByteArrayOutputStream();
+    //Output frames are decoded into reused buffers
+    private final CharsetDecoder decoder = UTF8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private byte[] frameBytes = new byte[8 * 1024];
+    private CharBuffer frameText = CharBuffer.allocate(8 * 1024);
+    //Frame may end in the middle of a multi-byte character, its first bytes are decoded with the next frame of the stream
+    private final byte[][] incompleteChars = {null, new byte[MAX_CHAR_BYTES], new byte[MAX_CHAR_BYTES]};
+    private final int[] incompleteCharLengths = new int[3];
+    private volatile boolean destroyed = false;
+    private boolean reusable = true;
+    private int runsCount = 0;
+    private long idleSince = System.currentTimeMillis();
+
+    private ExecutorProcess(Process process) {
+        this.process = process;
+        this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        this.errorStream = process.getErrorStream();
+        ExecutorsScheduler.register(this);
+    }
+
+    public static ExecutorProcess start(BackendSessionInfo.RunConfiguration configuration) throws IOException {
+        return new ExecutorProcess(Runtime.getRuntime().exec(generateCommandString(configuration)));
+    }
+
+    public static String[] generateCommandString(BackendSessionInfo.RunConfiguration configuration) {
+        List<String> builder = new ArrayList<>();
+        builder.add(BackendSettings.JAVA_EXECUTE);
+        builder.add("-ea");
+        builder.add("-Xmx32m");
+        builder.add("-Djava.security.manager");
+        builder.add("-Djava.security.policy=" + BackendSettings.WEBAPP_ROOT_DIRECTORY + File.separator + "executors.policy");
+        builder.add("-classpath");
+        String classpath = (BackendSettings.KOTLIN_LIBS_DIR + File.separator + "kotlin-runtime.jar" +
+                File.pathSeparator + BackendSettings.KOTLIN_LIBS_DIR + File.separator + "kotlin-reflect.jar" +
+                File.pathSeparator + BackendSettings.CLASS_PATH + File.separator + "Executors.jar" +
+                File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "jackson-databind.jar" +
+                File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "jackson-core.jar" +
+                File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "jackson-annotations.jar");
+        if (configuration.equals(BackendSessionInfo.RunConfiguration.JUNIT)) {
+            builder.add(classpath +
+                    File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "junit.jar" +
+                    File.pathSeparator + BackendSettings.KOTLIN_LIBS_DIR + File.separator + "kotlin-compiler.jar");
+        } else {
+            builder.add(classpath);
+        }
+        builder.add("org.jetbrains.webdemo.executors.ExecutorServer");
+        builder.add(String.valueOf(BackendSettings.MAX_OUTPUT_SIZE));
+        builder.add(String.valueOf(BackendSettings.CPU_TIME_LIMIT));
+        return builder.toArray(new String[builder.size()]);
+    }
+
+    /**
+     * @param files class files by path relative to the output root
+     * @param listener receives output of the program while it is running
+     */
+    public ExecutorResponse execute(String command, Map<String, byte[]> files, List<String> arguments, OutputListener listener) throws IOException {
+        runsCount++;
+        requests.writeUTF(command);
+        requests.writeInt(files.size());
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            requests.writeUTF(file.getKey());
+            requests.writeInt(file.getValue().length);
+            requests.write(file.getValue());
+        }
+        requests.writeInt(arguments.size());
+        for (String argument : arguments) {
+            requests.writeUTF(argument);
+        }
+        requests.flush();
+
+        incompleteCharLengths[OUT_STREAM] = 0;
+        incompleteCharLengths[ERR_STREAM] = 0;
+        int frame;
+        while ((frame = responses.readByte()) == OUT_STREAM || frame == ERR_STREAM) {
+            listener.onOutput(frame, readOutputFrame(frame));
+        }
+        if (frame != RESULT_FRAME) {
+            throw new IOException("Incorrect frame type from executor: " + frame);
+        }
+        for (int stream = OUT_STREAM; stream <= ERR_STREAM; stream++) {
+            if (incompleteCharLengths[stream] > 0) {
+                //Program has written only a part of the character, it is shown as a replacement character
+                listener.onOutput(stream, decode(incompleteChars[stream], incompleteCharLengths[stream], true));
+                incompleteCharLengths[stream] = 0;
+            }
+        }
+        boolean reusable = responses.readBoolean();
+        boolean outputIsTooLong = responses.readBoolean();
+        boolean cpuTimeLimitExceeded = responses.readBoolean();
+        long cpuTime = responses.readLong();
+        long peakHeap = responses.readLong();
+        long gcCount = responses.readLong();
+        long wallTime = responses.readLong();
+        byte[] text = readBytes();
+        this.reusable = reusable;
+        return new ExecutorResponse(reusable, outputIsTooLong, cpuTimeLimitExceeded, cpuTime, peakHeap, gcCount, wallTime, new String(text, UTF8));
+    }
+
+    private CharBuffer readOutputFrame(int stream) throws IOException {
+        int length = responses.readInt();
+        if (length < 0 || length > MAX_RESPONSE_SIZE) {
+            throw new IOException("Incorrect frame length from executor: " + length);
+        }
+        int incompleteCharLength = incompleteCharLengths[stream];
+        if (frameBytes.length < incompleteCharLength + length) {
+            frameBytes = new byte[incompleteCharLength + length];
+            //UTF-8 never decodes to more chars than bytes
+            frameText = CharBuffer.allocate(frameBytes.length);
+        }
+        System.arraycopy(incompleteChars[stream], 0, frameBytes, 0, incompleteCharLength);
+        responses.readFully(frameBytes, incompleteCharLength, length);
+        ByteBuffer bytes = ByteBuffer.wrap(frameBytes, 0, incompleteCharLength + length);
+        CharBuffer text = decode(bytes, false);
+        //Only the beginning of the last character can be left, malformed input is replaced
+        incompleteCharLengths[stream] = bytes.remaining();
+        bytes.get(incompleteChars[stream], 0, bytes.remaining());
+        return text;
+    }
+
+    private CharBuffer decode(byte[] bytes, int length, boolean endOfInput) {
+        return decode(ByteBuffer.wrap(bytes, 0, length), endOfInput);
+    }
+
+    private CharBuffer decode(ByteBuffer bytes, boolean endOfInput) {
+        frameText.clear();
+        decoder.reset();
+        decoder.decode(bytes, frameText, endOfInput);
+        if (endOfInput) {
+            decoder.flush(frameText);
+        }
+        frameText.flip();
+        return frameText;
+    }
+
+    private byte[] readBytes() throws IOException {
+        int length = responses.readInt();
+        if (length < 0 || length > MAX_RESPONSE_SIZE) {
+            throw new IOException("Incorrect response length from executor: " + length);
+        }
+        byte[] bytes = new byte[length];
+        responses.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads output left in the stdout of the destroyed process, e.g. JVM crash report.
+     */
+    public String readRemainingOutput() {
+        try {
+            return ResponseUtils.readData(responses, true);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    /**
+     * @return lines written to stderr of the process since the previous call
+     */
+    public List<String> takeErrorOutput() {
+        pollErrorOutput();
+        synchronized (errorOutput) {
+            List<String> result = new ArrayList<>(errorOutput);
+            errorOutput.clear();
+            return result;
+        }
+    }
+
+    public boolean isAlive() {
+        if (destroyed) {
+            return false;
+        }
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    public boolean isReusable() {
+        return reusable;
+    }
+
+    public int getRunsCount() {
+        return runsCount;
+    }
+
+    public long getIdleSince() {
+        return idleSince;
+    }
+
+    void markIdle() {
+        idleSince = System.currentTimeMillis();
+        takeErrorOutput();
+    }
+
+    public void destroy() {
+        destroyed = true;
+        ExecutorsScheduler.unregister(this);
+        process.destroy();
+    }
+
+    /**
+     * Reads available bytes of stderr without blocking. Called by {@link ExecutorsScheduler} periodically.
+     */
+    void pollErrorOutput() {
+        synchronized (errorOutput) {
+            try {
+                int available;
+                while ((available = errorStream.available()) > 0) {
+                    byte[] bytes = new byte[available];
+                    int read = errorStream.read(bytes);
+                    if (read <= 0) {
+                        break;
+                    }
+                    for (int i = 0; i < read; i++) {
+                        if (bytes[i] == '\n') {
+                            addErrorLine(errorLine.toString().replace("\r", ""));
+                            errorLine.reset();
+                        } else {
+                            errorLine.write(bytes[i]);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                //Stream is closed after process is destroyed
+            }
+        }
+    }
+
+    private void addErrorLine(String line) {
+        if (errorOutput.size() < BackendSettings.MAX_OUTPUT_SIZE / 100) {
+            errorOutput.add(line);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend.executor;
+
+public class ExecutorResponse {
+    private final boolean reusable;
+    private final boolean outputIsTooLong;
+    private final boolean cpuTimeLimitExceeded;
+    private final long cpuTime;
+    private final long peakHeap;
+    private final long gcCount;
+    private final long wallTime;
+    private final String text;
+
+    public ExecutorResponse(boolean reusable, boolean outputIsTooLong, boolean cpuTimeLimitExceeded,
+                            long cpuTime, long peakHeap, long gcCount, long wallTime, String text) {
+        this.reusable = reusable;
+        this.outputIsTooLong = outputIsTooLong;
+        this.cpuTimeLimitExceeded = cpuTimeLimitExceeded;
+        this.cpuTime = cpuTime;
+        this.peakHeap = peakHeap;
+        this.gcCount = gcCount;
+        this.wallTime = wallTime;
+        this.text = text;
+    }
+
+    public boolean isReusable() {
+        return reusable;
+    }
+
+    public boolean isOutputTooLong() {
+        return outputIsTooLong;
+    }
+
+    public boolean isCpuTimeLimitExceeded() {
+        return cpuTimeLimitExceeded;
+    }
+
+    /**
+     * @return CPU time of the program threads in milliseconds
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return peak heap usage of the executor JVM during the run in bytes
+     */
+    public long getPeakHeap() {
+        return peakHeap;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * @return run time in milliseconds
+     */
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
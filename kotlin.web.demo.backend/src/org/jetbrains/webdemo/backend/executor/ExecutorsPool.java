@@ -0,0 +1,130 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend.executor;
+
+import org.jetbrains.webdemo.ErrorWriter;
+import org.jetbrains.webdemo.backend.BackendSessionInfo;
+import org.jetbrains.webdemo.backend.BackendSettings;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Keeps up to {@link BackendSettings#EXECUTORS_POOL_SIZE} started executor processes for each run configuration.
+ * Process is recycled after {@link BackendSettings#EXECUTOR_MAX_RUNS} runs, after timeout or if user program
+ * left running threads, and idle processes are destroyed after {@link BackendSettings#EXECUTOR_IDLE_TIMEOUT}.
+ */
+public class ExecutorsPool {
+    private static final Map<BackendSessionInfo.RunConfiguration, ExecutorsPool> pools = new EnumMap<>(BackendSessionInfo.RunConfiguration.class);
+
+    private final BackendSessionInfo.RunConfiguration configuration;
+    private final LinkedBlockingDeque<ExecutorProcess> idleExecutors = new LinkedBlockingDeque<>();
+
+    private ExecutorsPool(BackendSessionInfo.RunConfiguration configuration) {
+        this.configuration = configuration;
+        if (BackendSettings.EXECUTORS_POOL_SIZE > 0 && BackendSettings.EXECUTOR_IDLE_TIMEOUT > 0) {
+            long period = Math.max(BackendSettings.EXECUTOR_IDLE_TIMEOUT / 2, 1000);
+            ExecutorsScheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    removeIdleExecutors();
+                }
+            }, period);
+        }
+    }
+
+    public static synchronized ExecutorsPool getInstance(BackendSessionInfo.RunConfiguration configuration) {
+        ExecutorsPool pool = pools.get(configuration);
+        if (pool == null) {
+            pool = new ExecutorsPool(configuration);
+            pools.put(configuration, pool);
+        }
+        return pool;
+    }
+
+    public static synchronized void shutdownAll() {
+        ExecutorsScheduler.shutdown();
+        for (ExecutorsPool pool : pools.values()) {
+            ExecutorProcess executor;
+            while ((executor = pool.idleExecutors.pollFirst()) != null) {
+                executor.destroy();
+            }
+        }
+        pools.clear();
+    }
+
+    public String[] getCommand() {
+        return ExecutorProcess.generateCommandString(configuration);
+    }
+
+    public ExecutorProcess acquire() throws IOException {
+        ExecutorProcess executor;
+        while ((executor = idleExecutors.pollFirst()) != null) {
+            if (executor.isAlive()) {
+                startSpareExecutor();
+                return executor;
+            }
+            executor.destroy();
+        }
+        startSpareExecutor();
+        return ExecutorProcess.start(configuration);
+    }
+
+    public void release(ExecutorProcess executor) {
+        if (executor.isAlive() &&
+                executor.isReusable() &&
+                executor.getRunsCount() < BackendSettings.EXECUTOR_MAX_RUNS &&
+                idleExecutors.size() < BackendSettings.EXECUTORS_POOL_SIZE) {
+            executor.markIdle();
+            idleExecutors.offerFirst(executor);
+        } else {
+            executor.destroy();
+        }
+    }
+
+    private void startSpareExecutor() {
+        if (idleExecutors.size() >= BackendSettings.EXECUTORS_POOL_SIZE) {
+            return;
+        }
+        ExecutorsScheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (idleExecutors.size() >= BackendSettings.EXECUTORS_POOL_SIZE) {
+                    return;
+                }
+                try {
+                    idleExecutors.offerLast(ExecutorProcess.start(configuration));
+                } catch (IOException e) {
+                    ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
+                            BackendSessionInfo.TypeOfRequest.RUN.name(), "", Arrays.toString(getCommand()));
+                }
+            }
+        });
+    }
+
+    private void removeIdleExecutors() {
+        long now = System.currentTimeMillis();
+        Iterator<ExecutorProcess> iterator = idleExecutors.iterator();
+        while (iterator.hasNext()) {
+            ExecutorProcess executor = iterator.next();
+            if (now - executor.getIdleSince() > BackendSettings.EXECUTOR_IDLE_TIMEOUT && idleExecutors.remove(executor)) {
+                executor.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.webdemo.backend.executor;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Shared daemon threads of executors: deadlines of runs, maintenance of pools and polling of standard error
+ * of all executor processes. Number of threads doesn't depend on the number of processes or concurrent runs.
+ */
+public class ExecutorsScheduler {
+    private static final int THREADS_COUNT = 2;
+    private static final int ERROR_OUTPUT_POLL_PERIOD = 50; //milliseconds
+
+    private static final Set<ExecutorProcess> processes = Collections.newSetFromMap(new ConcurrentHashMap<ExecutorProcess, Boolean>());
+    private static final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(THREADS_COUNT, new ThreadFactory() {
+        private int count = 0;
+
+        @Override
+        public synchronized Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "executors-scheduler-" + (++count));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (ExecutorProcess process : processes) {
+                    process.pollErrorOutput();
+                }
+            }
+        }, ERROR_OUTPUT_POLL_PERIOD, ERROR_OUTPUT_POLL_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return future to cancel the task, e.g. deadline of the run that has finished in time
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay) {
+        return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    static void scheduleWithFixedDelay(Runnable task, long period) {
+        scheduler.scheduleWithFixedDelay(task, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    static void execute(Runnable task) {
+        scheduler.execute(task);
+    }
+
+    static void register(ExecutorProcess process) {
+        processes.add(process);
+    }
+
+    static void unregister(ExecutorProcess process) {
+        processes.remove(process);
+    }
+
+    static void shutdown() {
+        scheduler.shutdownNow();
+        processes.clear();
+    }
+}
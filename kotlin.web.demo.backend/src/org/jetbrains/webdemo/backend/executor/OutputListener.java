@@ -0,0 +1,28 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend.executor;
+
+/**
+ * Receives output of user program from {@link ExecutorProcess} while the program is running.
+ */
+public interface OutputListener {
+    /**
+     * @param stream {@link ExecutorProcess#OUT_STREAM} or {@link ExecutorProcess#ERR_STREAM}
+     * @param text   written text, valid only until the method returns
+     */
+    void onOutput(int stream, CharSequence text);
+}
@@ -19,32 +19,35 @@ package org.jetbrains.webdemo.backend.responseHelpers;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.psi.PsiFile;
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
 import org.jetbrains.kotlin.backend.common.output.OutputFile;
 import org.jetbrains.kotlin.codegen.ClassFileFactory;
 import org.jetbrains.kotlin.codegen.CompilationErrorHandler;
 import org.jetbrains.kotlin.codegen.KotlinCodegenFacade;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
 import org.jetbrains.kotlin.diagnostics.Severity;
+import org.jetbrains.kotlin.idea.MainFunctionDetector;
+import org.jetbrains.kotlin.load.kotlin.PackageClassUtils;
+import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.psi.JetFile;
+import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.webdemo.ErrorWriter;
 import org.jetbrains.webdemo.JsonUtils;
 import org.jetbrains.webdemo.ResponseUtils;
 import org.jetbrains.webdemo.backend.BackendSessionInfo;
 import org.jetbrains.webdemo.backend.BackendSettings;
 import org.jetbrains.webdemo.backend.BackendUtils;
+import org.jetbrains.webdemo.backend.CompilationCache;
 import org.jetbrains.webdemo.backend.ResolveUtils;
 import org.jetbrains.webdemo.backend.errorsDescriptors.ErrorAnalyzer;
 import org.jetbrains.webdemo.backend.errorsDescriptors.ErrorDescriptor;
 import org.jetbrains.webdemo.backend.exceptions.KotlinCoreException;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.TimeoutException;
 
 public class CompileAndRunExecutor {
@@ -54,94 +57,119 @@ public class CompileAndRunExecutor {
     private final BackendSessionInfo sessionInfo;
     private final String args;
     private final com.intellij.openapi.project.Project currentProject;
+    private final StreamingRunResponse stream;
+    private Runnable compiledCallback;
 
     public CompileAndRunExecutor(List<PsiFile> currentPsiFiles, com.intellij.openapi.project.Project currentProject, BackendSessionInfo info, String args) {
+        this(currentPsiFiles, currentProject, info, args, null);
+    }
+
+    /**
+     * @param stream if not null, output of the program is sent to it while the program is running,
+     *               see {@link JavaRunner#JavaRunner(Map, String, String, ArrayNode, JetFile, BackendSessionInfo, StreamingRunResponse)}
+     */
+    public CompileAndRunExecutor(List<PsiFile> currentPsiFiles, com.intellij.openapi.project.Project currentProject, BackendSessionInfo info, String args, StreamingRunResponse stream) {
         this.currentPsiFiles = currentPsiFiles;
         this.currentProject = currentProject;
         this.sessionInfo = info;
         this.args = args;
+        this.stream = stream;
+    }
+
+    /**
+     * @param callback is called when the program is compiled, before it is run. The project is not used after that,
+     *                 so its environment can be given to other requests while the program runs.
+     */
+    public void setCompiledCallback(Runnable callback) {
+        this.compiledCallback = callback;
     }
 
     public String getResult() throws Exception {
-        ErrorAnalyzer analyzer = new ErrorAnalyzer(currentPsiFiles, sessionInfo, currentProject);
-        Map<String,List<ErrorDescriptor>> errors;
-        try {
-            errors = analyzer.getAllErrors();
-        } catch (KotlinCoreException e) {
-            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, sessionInfo.getType(), sessionInfo.getOriginUrl(), BackendUtils.getPsiFilesContent(currentPsiFiles));
-            return ResponseUtils.getErrorWithStackTraceInJson(BackendSettings.KOTLIN_ERROR_MESSAGE, e.getStackTraceString());
+        String cacheKey = CompilationCache.getKey(currentPsiFiles, sessionInfo.getRunConfiguration());
+        CompilationCache.CompilationResult compilationResult = CompilationCache.getInstance().get(cacheKey);
+        if (compilationResult == null) {
+            List<JetFile> jetFiles = convertList(currentPsiFiles);
+            sessionInfo.getTimeManager().saveCurrentTime();
+            AnalysisResult analysisResult;
+            try {
+                analysisResult = ResolveUtils.analyzeFiles(jetFiles, currentProject);
+            } catch (Throwable e) {
+                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, sessionInfo.getType(), sessionInfo.getOriginUrl(), BackendUtils.getPsiFilesContent(currentPsiFiles));
+                return ResponseUtils.getErrorWithStackTraceInJson(BackendSettings.KOTLIN_ERROR_MESSAGE, new KotlinCoreException(e).getStackTraceString());
+            }
+            ErrorAnalyzer analyzer = new ErrorAnalyzer(currentPsiFiles, sessionInfo, currentProject);
+            Map<String, List<ErrorDescriptor>> errors = analyzer.getAllErrors(analysisResult.getBindingContext());
+
+            Map<String, byte[]> files = new LinkedHashMap<>();
+            String mainClass = null;
+            if (errors.isEmpty() || isOnlyWarnings(errors)) {
+//                Project currentProject = currentPsiFile.getProject();
+                sessionInfo.getTimeManager().saveCurrentTime();
+                GenerationState generationState;
+                try {
+
+                    generationState = ResolveUtils.getGenerationState(jetFiles, currentProject, analysisResult);
+                    KotlinCodegenFacade.compileCorrectFiles(generationState, new CompilationErrorHandler() {
+                        @Override
+                        public void reportException(Throwable throwable, String s) {
+                            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(throwable, sessionInfo.getType(), sessionInfo.getOriginUrl(), s + " ");
+                        }
+                    });
+                } catch (Throwable e) {
+                    ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, sessionInfo.getType(), sessionInfo.getOriginUrl(), BackendUtils.getPsiFilesContent(currentPsiFiles));
+                    return ResponseUtils.getErrorWithStackTraceInJson(BackendSettings.KOTLIN_ERROR_MESSAGE, new KotlinCoreException(e).getStackTraceString());
+                }
+//                ErrorWriter.LOG_FOR_INFO.info(ErrorWriter.getInfoForLogWoIp(sessionInfo.getType(), sessionInfo.getId(),
+//                        "COMPILE correctNamespaces " + sessionInfo.getTimeManager().getMillisecondsFromSavedTime()));
+
+                final ClassFileFactory factory = generationState.getFactory();
+                for (OutputFile file : factory.asList()) {
+                    files.put(file.getRelativePath(), file.asByteArray());
+                }
+                mainClass = findMainClass(generationState.getBindingContext(), (JetFile) currentPsiFiles.get(0));
+            }
+            compilationResult = new CompilationCache.CompilationResult(errors, files, mainClass);
+            CompilationCache.getInstance().put(cacheKey, compilationResult);
+        }
+        if (compiledCallback != null) {
+            compiledCallback.run();
         }
 
+        Map<String, List<ErrorDescriptor>> errors = compilationResult.getErrors();
         ArrayNode jsonArray = new ArrayNode(JsonNodeFactory.instance);
         ObjectNode errorsJson = jsonArray.addObject();
         errorsJson.put("type", "errors");
         errorsJson.put("errors", JsonUtils.getObjectMapper().valueToTree(errors));
 
         if (errors.isEmpty() || isOnlyWarnings(errors)) {
-//            Project currentProject = currentPsiFile.getProject();
-            sessionInfo.getTimeManager().saveCurrentTime();
-            GenerationState generationState;
-            try {
-
-                generationState = ResolveUtils.getGenerationState(convertList(currentPsiFiles), currentProject);
-                KotlinCodegenFacade.compileCorrectFiles(generationState, new CompilationErrorHandler() {
-                    @Override
-                    public void reportException(Throwable throwable, String s) {
-                        ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(throwable, sessionInfo.getType(), sessionInfo.getOriginUrl(), s + " ");
-                    }
-                });
-            } catch (Throwable e) {
-                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, sessionInfo.getType(), sessionInfo.getOriginUrl(), BackendUtils.getPsiFilesContent(currentPsiFiles));
-                return ResponseUtils.getErrorWithStackTraceInJson(BackendSettings.KOTLIN_ERROR_MESSAGE, new KotlinCoreException(e).getStackTraceString());
-            }
-//            ErrorWriter.LOG_FOR_INFO.info(ErrorWriter.getInfoForLogWoIp(sessionInfo.getType(), sessionInfo.getId(),
-//                    "COMPILE correctNamespaces " + sessionInfo.getTimeManager().getMillisecondsFromSavedTime()));
-
             StringBuilder stringBuilder = new StringBuilder("Generated classfiles: ");
             stringBuilder.append(ResponseUtils.addNewLine());
-            final ClassFileFactory factory = generationState.getFactory();
 
             sessionInfo.getTimeManager().saveCurrentTime();
-            List<OutputFile> files = factory.asList();
-            File outputDir = new File(BackendSettings.OUTPUT_DIRECTORY + File.separator + "tmp" + new Random().nextInt());
-            boolean isOutputExists = true;
-            if (!outputDir.exists()) {
-                isOutputExists = outputDir.mkdirs();
-            }
-            for (OutputFile file : files) {
-                if (isOutputExists) {
-                    File target = new File(outputDir, file.getRelativePath());
-                    try {
-                        FileUtil.writeToFile(target, file.asByteArray());
-                        stringBuilder.append(file.getRelativePath()).append(ResponseUtils.addNewLine());
-                    } catch (IOException e) {
-                        ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
-                                sessionInfo.getType(), sessionInfo.getOriginUrl(), BackendUtils.getPsiFilesContent(currentPsiFiles));
-                        return ResponseUtils.getErrorInJson("Cannot get a result.");
-                    }
-                } else {
-                    ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(new UnsupportedOperationException("Cannot create output directory for files"),
-                            sessionInfo.getType(), sessionInfo.getOriginUrl(), BackendUtils.getPsiFilesContent(currentPsiFiles));
-                    return ResponseUtils.getErrorInJson("Error on server: cannot run your program.");
-                }
-
+            for (String path : compilationResult.getFiles().keySet()) {
+                stringBuilder.append(path).append(ResponseUtils.addNewLine());
             }
-//            ErrorWriter.LOG_FOR_INFO.info(ErrorWriter.getInfoForLogWoIp(sessionInfo.getType(), sessionInfo.getId(),
-//                    "Write files on disk " + sessionInfo.getTimeManager().getMillisecondsFromSavedTime()));
 
             ObjectNode jsonObject = jsonArray.addObject();
             jsonObject.put("type", "info");
             jsonObject.put("text", stringBuilder.toString());
 
 
-            JavaRunner runner = new JavaRunner(generationState.getBindingContext(), files, args, jsonArray, (JetFile) currentPsiFiles.get(0), sessionInfo);
+            JavaRunner runner = new JavaRunner(compilationResult.getFiles(), compilationResult.getMainClass(), args, jsonArray, (JetFile) currentPsiFiles.get(0), sessionInfo, stream);
 
-            runner.getResult(outputDir.getAbsolutePath());
+            runner.getResult();
         }
 
         return jsonArray.toString();
     }
 
+    private String findMainClass(BindingContext bindingContext, JetFile currentFile) {
+        if (new MainFunctionDetector(bindingContext).hasMain(currentFile.getDeclarations())) {
+            return PackageClassUtils.getPackageClassFqName(currentFile.getPackageFqName()).asString();
+        }
+        return PackageClassUtils.getPackageClassName(FqName.ROOT);
+    }
+
     private List<JetFile> convertList(List<PsiFile> list){
         List<JetFile> ans = new ArrayList<>();
         for(PsiFile psiFile : list){
@@ -16,58 +16,70 @@
 
 package org.jetbrains.webdemo.backend.responseHelpers;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.jetbrains.kotlin.backend.common.output.OutputFile;
-import org.jetbrains.kotlin.idea.MainFunctionDetector;
-import org.jetbrains.kotlin.load.kotlin.PackageClassUtils;
-import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.psi.JetFile;
-import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.webdemo.ErrorWriter;
+import org.jetbrains.webdemo.LogWriter;
 import org.jetbrains.webdemo.ResponseUtils;
 import org.jetbrains.webdemo.backend.BackendSessionInfo;
 import org.jetbrains.webdemo.backend.BackendSettings;
+import org.jetbrains.webdemo.backend.executor.ExecutorProcess;
+import org.jetbrains.webdemo.backend.executor.ExecutorResponse;
+import org.jetbrains.webdemo.backend.executor.ExecutorsPool;
+import org.jetbrains.webdemo.backend.executor.ExecutorsScheduler;
+import org.jetbrains.webdemo.backend.executor.OutputListener;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class JavaRunner {
-    private static Timer timer = new Timer(true);
-
-    private final BindingContext bindingContext;
-    private final List<OutputFile> files;
+    private final Map<String, byte[]> files;
+    private final String mainClass;
     private final ArrayNode jsonArray;
     private final JetFile currentFile;
     private final BackendSessionInfo sessionInfo;
-    int returnValue = 0;
+    private final StreamingRunResponse stream;
     private String arguments;
     private volatile boolean isTimeoutException = false;
     private volatile boolean outputIsTooLong = false;
+    private boolean cpuTimeLimitExceeded = false;
+    private ObjectNode statistics = null;
+
+    public JavaRunner(Map<String, byte[]> files, String mainClass, String arguments, ArrayNode array, JetFile currentFile, BackendSessionInfo info) {
+        this(files, mainClass, arguments, array, currentFile, info, null);
+    }
 
-    public JavaRunner(BindingContext bindingContext, List<OutputFile> files, String arguments, ArrayNode array, JetFile currentFile, BackendSessionInfo info) {
-        this.bindingContext = bindingContext;
+    /**
+     * @param stream if not null, elements of the array and output of the program are sent to it
+     *               while the program is running, and only the remaining elements are added to the array
+     */
+    public JavaRunner(Map<String, byte[]> files, String mainClass, String arguments, ArrayNode array, JetFile currentFile, BackendSessionInfo info, StreamingRunResponse stream) {
         this.files = files;
+        this.mainClass = mainClass;
         this.arguments = arguments;
         this.jsonArray = array;
         this.currentFile = currentFile;
         this.sessionInfo = info;
+        this.stream = stream;
     }
 
-    public String getResult(String pathToRootOut) throws Exception {
-        Process process = null;
+    public String getResult() throws Exception {
+        ExecutorsPool pool = ExecutorsPool.getInstance(sessionInfo.getRunConfiguration());
+        ExecutorProcess executor = null;
         try {
-            String[] commandString = generateCommandString(pathToRootOut);
             sessionInfo.getTimeManager().saveCurrentTime();
             try {
-                process = Runtime.getRuntime().exec(commandString);
-                process.getOutputStream().close();
+                executor = pool.acquire();
             } catch (IOException e) {
                 ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
-                        sessionInfo.getType(), sessionInfo.getOriginUrl(), Arrays.toString(commandString));
+                        sessionInfo.getType(), sessionInfo.getOriginUrl(), Arrays.toString(pool.getCommand()));
                 StringWriter stackTrace = new StringWriter();
                 e.printStackTrace(new PrintWriter(stackTrace));
                 return ResponseUtils.getErrorWithStackTraceInJson("Impossible to run your program: IOException handled until execution", stackTrace.toString());
@@ -75,119 +87,96 @@ public class JavaRunner {
 
             final StringBuilder errStream = new StringBuilder();
             final StringBuilder outStream = new StringBuilder();
+            final ProgramOutputBuilder programOutput = new ProgramOutputBuilder();
 
-            final Process finalProcess = process;
-            timer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    isTimeoutException = true;
-                    finalProcess.destroy();
+            if (stream != null) {
+                for (JsonNode element : jsonArray) {
+                    stream.writeElement(element);
                 }
-            }, BackendSettings.TIMEOUT_FOR_EXECUTION);
-
-            final BufferedReader stdOut = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            final BufferedReader stdErr = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+                jsonArray.removeAll();
+            }
 
-            // Thread that reads std out and feeds the writer given in input
-            Thread stdReader = new Thread() {
+            //Run ends either by the timeout or by the response of executor, whichever comes first
+            final AtomicBoolean runEnded = new AtomicBoolean(false);
+            final ExecutorProcess finalExecutor = executor;
+            ScheduledFuture<?> timeoutTask = ExecutorsScheduler.schedule(new Runnable() {
                 @Override
                 public void run() {
-                    String line;
-                    try {
-                        while (!isTimeoutException &&
-                                (line = stdOut.readLine()) != null) {
-                            outStream.append(ResponseUtils.escapeString(line));
-                            if(outStream.length() > BackendSettings.MAX_OUTPUT_SIZE){
-                                outputIsTooLong = true;
-                                finalProcess.destroy();
-                            }
-                        }
-                    } catch (Throwable e) {
-                        //Stream closes after timeout, and stdOut.readLine can produce "Stream closed exception"
-                        if(!isTimeoutException) {
-                            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
-                                    sessionInfo.getType(), sessionInfo.getOriginUrl(), currentFile.getText());
-                        }
+                    if (runEnded.compareAndSet(false, true)) {
+                        finalExecutor.destroy();
                     }
                 }
-            };
-            stdReader.start(); // Starts now
+            }, BackendSettings.TIMEOUT_FOR_EXECUTION);
 
-            // Thread that reads std err and feeds the writer given in input
-            Thread stdErrReader = new Thread() {
-                @Override
-                public void run() {
-                    String line;
-                    try {
-                        while (!isTimeoutException &&
-                                (line = stdErr.readLine()) != null) {
-                            errStream.append(ResponseUtils.escapeString(line)).append(ResponseUtils.addNewLine());
-                        }
-                    } catch (Throwable e) {
-                        if(!isTimeoutException) {
-                            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
-                                    sessionInfo.getType(), sessionInfo.getOriginUrl(), currentFile.getText());
+            boolean executorCrashed = false;
+            try {
+                ExecutorResponse response = executor.execute(getCommand(), files, generateArguments(), new OutputListener() {
+                    @Override
+                    public void onOutput(int outputStream, CharSequence text) {
+                        programOutput.append(outputStream, text);
+                        if (stream != null) {
+                            stream.writeOutput(programOutput.take());
                         }
                     }
+                });
+                isTimeoutException = !runEnded.compareAndSet(false, true);
+                outStream.append(ResponseUtils.escapeString(response.getText()));
+                cpuTimeLimitExceeded = response.isCpuTimeLimitExceeded();
+                statistics = getStatistics(response);
+                outputIsTooLong = response.isOutputTooLong() || outStream.length() + programOutput.length() > BackendSettings.MAX_OUTPUT_SIZE;
+            } catch (IOException e) {
+                //Stream closes after timeout, otherwise executor JVM has crashed
+                isTimeoutException = !runEnded.compareAndSet(false, true);
+                if (!isTimeoutException) {
+                    executorCrashed = true;
+                    executor.destroy();
+                    outStream.append(ResponseUtils.escapeString(executor.readRemainingOutput()));
                 }
-            };
-            stdErrReader.start(); // Starts now
-
-            int exitValue;
-            try {
-                stdReader.join(10000);
-                stdErrReader.join(10000);
-                exitValue = process.waitFor();
-            } catch (InterruptedException e) {
-                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
-                        sessionInfo.getType(), sessionInfo.getOriginUrl(), currentFile.getText());
-                return ResponseUtils.getErrorInJson("Impossible to run your program: InterruptedException handled.");
             } finally {
-                try {
-                    stdOut.close();
-                    stdErr.close();
-                } catch (IOException e) {
-                    ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
-                            sessionInfo.getType(), sessionInfo.getOriginUrl(), currentFile.getText());
-                    //noinspection ReturnInsideFinallyBlock
-                    return ResponseUtils.getErrorInJson("Couldn't close output stream after executing code");
-                }
+                timeoutTask.cancel(false);
+            }
+
+            for (String line : executor.takeErrorOutput()) {
+                errStream.append(ResponseUtils.escapeString(line)).append(ResponseUtils.addNewLine());
             }
 
 //            ErrorWriter.LOG_FOR_INFO.info(ErrorWriter.getInfoForLogWoIp(sessionInfo.getType(),
 //                    sessionInfo.getId(), "RunUserProgram " + sessionInfo.getTimeManager().getMillisecondsFromSavedTime()
-//                            + " timeout=" + isTimeoutException
-//                            + " commandString=" + Arrays.toString(commandString)));
+//                            + " timeout=" + isTimeoutException));
 
 
             if (!isTimeoutException) {
-                if ((exitValue == 1) &&
-                        !isTimeoutException &&
-                        outStream.length() > 0 &&
-                        outStream.indexOf("An error report file with more information is saved as:") != -1) {
-                    outStream.delete(0, outStream.length());
-                    errStream.append(BackendSettings.KOTLIN_ERROR_MESSAGE);
-                    String linkForLog = getLinkForLog(outStream.toString());
+                if (executorCrashed) {
+                    String linkForLog = outStream.indexOf("An error report file with more information is saved as:") != -1 ?
+                            getLinkForLog(outStream.toString()) : "";
                     ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer("An error report in JVM", outStream.toString().replace("<br/>", "\n") + "\n" + errStream.toString().replace("<br/>", "\n") + "\n" + linkForLog,
                             sessionInfo.getType(), sessionInfo.getOriginUrl(), currentFile.getText());
-                } else if (!isTimeoutException) {
-                    if (outputIsTooLong) {
-                        throw new Exception("Your program produces too much output.");
-                    } else {
-                        try {
-                            if (sessionInfo.getRunConfiguration().equals(BackendSessionInfo.RunConfiguration.JUNIT)) {
-                                ObjectNode output = jsonArray.addObject();
-                                ArrayNode executorOutput = (ArrayNode) new ObjectMapper().readTree(outStream.toString());
-                                output.put("testResults", executorOutput);
-                                output.put("type", "out");
-                            } else {
-                                ObjectNode output = (ObjectNode) new ObjectMapper().readTree(outStream.toString());
-                                output.put("type", "out");
-                                jsonArray.add(output);
+                    outStream.delete(0, outStream.length());
+                    errStream.append(BackendSettings.KOTLIN_ERROR_MESSAGE);
+                } else if (outputIsTooLong) {
+                    throw new Exception("Your program produces too much output.");
+                } else if (cpuTimeLimitExceeded) {
+                    throw new TimeoutException(
+                            "Program was terminated after using " + BackendSettings.CPU_TIME_LIMIT / 1000.0 + "s of CPU time.");
+                } else {
+                    try {
+                        if (sessionInfo.getRunConfiguration().equals(BackendSessionInfo.RunConfiguration.JUNIT)) {
+                            ObjectNode output = jsonArray.addObject();
+                            ArrayNode executorOutput = (ArrayNode) new ObjectMapper().readTree(outStream.toString());
+                            output.put("testResults", executorOutput);
+                            output.put("statistics", statistics);
+                            output.put("type", "out");
+                        } else {
+                            ObjectNode output = (ObjectNode) new ObjectMapper().readTree(outStream.toString());
+                            if (stream == null) {
+                                output.put("text", programOutput.take());
                             }
-                        } catch (IOException e) {
-                            e.printStackTrace();
+                            output.put("statistics", statistics);
+                            output.put("type", "out");
+                            jsonArray.add(output);
                         }
+                    } catch (IOException e) {
+                        e.printStackTrace();
                     }
                 }
 
@@ -215,15 +204,24 @@ public class JavaRunner {
                         "Program was terminated after " + BackendSettings.TIMEOUT_FOR_EXECUTION / 1000 + "s.");
             }
         } finally {
-            for (OutputFile file : files) {
-                deleteFile(file.getRelativePath(), pathToRootOut);
-            }
-            if(process != null){
-                process.destroy();
+            if (executor != null) {
+                pool.release(executor);
             }
         }
     }
 
+    private ObjectNode getStatistics(ExecutorResponse response) {
+        ObjectNode result = new ObjectNode(JsonNodeFactory.instance);
+        result.put("cpuTime", response.getCpuTime());
+        result.put("peakHeap", response.getPeakHeap());
+        result.put("gcCount", response.getGcCount());
+        result.put("wallTime", response.getWallTime());
+        LogWriter.logRunStatistics(sessionInfo.getId(), sessionInfo.getRunConfiguration().name(),
+                "cpuTime=" + response.getCpuTime() + " peakHeap=" + response.getPeakHeap() + " gcCount=" + response.getGcCount() +
+                        " wallTime=" + response.getWallTime() + " cpuTimeLimitExceeded=" + response.isCpuTimeLimitExceeded());
+        return result;
+    }
+
     private String getLinkForLog(String outStream) {
         String path = ResponseUtils.substringAfter(outStream, "An error report file with more information is saved as:" + ResponseUtils.addNewLine() + "# ");
         path = ResponseUtils.substringBefore(path, ResponseUtils.addNewLine() + "#");
@@ -283,99 +281,21 @@ public class JavaRunner {
         return false;
     }
 
-    private void deleteFile(String path, String pathToRootOut) {
-        File f = new File(pathToRootOut + File.separatorChar + path);
-        File parent = f.getParentFile();
-        while (!parent.getAbsolutePath().equals(pathToRootOut)) {
-            f = parent;
-            parent = parent.getParentFile();
-        }
-        delete(f);
-        delete(new File(pathToRootOut));
-    }
-
-    private void delete(File file) {
-        if (file.isDirectory() && file.exists()) {
-            if (file.list().length == 0) {
-                if (file.exists()) {
-                    file.delete();
-//                    ErrorWriter.LOG_FOR_INFO.info(ErrorWriter.getInfoForLogWoIp(sessionInfo.getType(),
-//                            sessionInfo.getId(), "Directory is deleted : " + file.getAbsolutePath()));
-                }
-            } else {
-                //list all the directory contents
-                String files[] = file.list();
-                for (String temp : files) {
-                    //construct the file structure
-                    File fileDelete = new File(file, temp);
-                    delete(fileDelete);
-                }
-                //check the directory again, if empty then delete it
-                if (file.list().length == 0) {
-                    if (file.exists()) {
-                        file.delete();
-//                        ErrorWriter.LOG_FOR_INFO.info(ErrorWriter.getInfoForLogWoIp(sessionInfo.getType(),
-//                                sessionInfo.getId(), "Directory is deleted : " + file.getAbsolutePath()));
-                    }
-                }
-            }
-        } else {
-            if (file.exists()) {
-                file.delete();
-//                ErrorWriter.LOG_FOR_INFO.info(ErrorWriter.getInfoForLogWoIp(sessionInfo.getType(),
-//                        sessionInfo.getId(), "File is deleted : " + file.getAbsolutePath()));
-            }
+    private String getCommand() {
+        if (sessionInfo.getRunConfiguration().equals(BackendSessionInfo.RunConfiguration.JUNIT)) {
+            return ExecutorProcess.JUNIT_COMMAND;
         }
+        return ExecutorProcess.JAVA_COMMAND;
     }
 
-    private String[] generateCommandString(String pathToRootOut) {
-        List<String> argsArray = Arrays.asList(ResponseUtils.splitArguments(arguments));
-
-        List<String> builder;
-        if (arguments.isEmpty()) {
-            builder = new ArrayList<>(5);
-        } else {
-            builder = new ArrayList<>(argsArray.size() + 5);
-        }
-        builder.add(BackendSettings.JAVA_EXECUTE);
-        builder.add("-ea");
-        builder.add("-Xmx32m");
-        builder.add("-Djava.security.manager");
-        builder.add("-Djava.security.policy=" + BackendSettings.WEBAPP_ROOT_DIRECTORY + File.separator + "executors.policy");
-        builder.add("-classpath");
-        String classpath = (pathToRootOut +
-                File.pathSeparator + BackendSettings.KOTLIN_LIBS_DIR + File.separator + "kotlin-runtime.jar" +
-                File.pathSeparator + BackendSettings.KOTLIN_LIBS_DIR + File.separator + "kotlin-reflect.jar" +
-                File.pathSeparator + BackendSettings.CLASS_PATH + File.separator + "Executors.jar");
-        if (sessionInfo.getRunConfiguration().equals(BackendSessionInfo.RunConfiguration.JUNIT)) {
-            builder.add(classpath +
-                            File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "junit.jar" +
-                            File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "jackson-databind.jar" +
-                            File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "jackson-core.jar" +
-                            File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "jackson-annotations.jar" +
-                            File.pathSeparator + BackendSettings.KOTLIN_LIBS_DIR + File.separator + "kotlin-compiler.jar"
-            );
-            builder.add("org.jetbrains.webdemo.executors.JunitExecutor");
-            builder.add(pathToRootOut);
-        } else {
-            builder.add(classpath +
-                    File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "jackson-databind.jar" +
-                    File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "jackson-core.jar" +
-                    File.pathSeparator + BackendSettings.LIBS_DIR + File.separator + "jackson-annotations.jar");
-            builder.add("org.jetbrains.webdemo.executors.JavaExecutor");
-            builder.add(findMainClass());
+    private List<String> generateArguments() {
+        List<String> builder = new ArrayList<>();
+        if (!sessionInfo.getRunConfiguration().equals(BackendSessionInfo.RunConfiguration.JUNIT)) {
+            builder.add(mainClass);
             if (!arguments.isEmpty()) {
-                builder.addAll(argsArray);
+                builder.addAll(Arrays.asList(ResponseUtils.splitArguments(arguments)));
             }
         }
-        return builder.toArray(new String[builder.size()]);
-
-    }
-
-    private String findMainClass() {
-        if (new MainFunctionDetector(bindingContext).hasMain(currentFile.getDeclarations())) {
-            return PackageClassUtils.getPackageClassFqName(currentFile.getPackageFqName()).asString();
-        }
-        return PackageClassUtils.getPackageClassName(FqName.ROOT);
+        return builder;
     }
 }
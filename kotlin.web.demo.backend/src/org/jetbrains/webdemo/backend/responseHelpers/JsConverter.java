@@ -27,7 +27,6 @@ import org.jetbrains.webdemo.ResponseUtils;
 import org.jetbrains.webdemo.backend.BackendSessionInfo;
 import org.jetbrains.webdemo.backend.BackendSettings;
 import org.jetbrains.webdemo.backend.BackendUtils;
-import org.jetbrains.webdemo.backend.Initializer;
 import org.jetbrains.webdemo.backend.errorsDescriptors.ErrorAnalyzer;
 import org.jetbrains.webdemo.backend.errorsDescriptors.ErrorDescriptor;
 import org.jetbrains.webdemo.backend.exceptions.KotlinCoreException;
@@ -44,7 +43,7 @@ public class JsConverter {
     }
 
     public String getResult(List<PsiFile> files, BackendSessionInfo sessionInfo, String arguments) {
-        ErrorAnalyzer analyzer = new ErrorAnalyzer(files, sessionInfo, Initializer.getInstance().getEnvironment().getProject());
+        ErrorAnalyzer analyzer = new ErrorAnalyzer(files, sessionInfo, files.get(0).getProject());
         Map<String, List<ErrorDescriptor>> errors;
         try {
             errors = analyzer.getAllErrors();
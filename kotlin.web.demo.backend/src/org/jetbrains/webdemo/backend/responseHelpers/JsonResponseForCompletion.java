@@ -20,6 +20,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
 import com.intellij.psi.PsiElement;
@@ -69,12 +70,6 @@ public class JsonResponseForCompletion {
             return true;
         }
     };
-    private static final Function1<Name, Boolean> NAME_FILTER = new Function1<Name, Boolean>() {
-        @Override
-        public Boolean invoke(Name name) {
-            return true;
-        }
-    };
     private final int NUMBER_OF_CHAR_IN_COMPLETION_NAME = 40;
     private final Project currentProject;
     private final int lineNumber;
@@ -153,10 +148,12 @@ public class JsonResponseForCompletion {
         BindingContext bindingContext;
         try {
             if (sessionInfo.getRunConfiguration().equals(BackendSessionInfo.RunConfiguration.CANVAS)) {
-                bindingContext = WebDemoTranslatorFacade.analyzeProgramCode(convertList(psiFiles), sessionInfo);
+                bindingContext = WebDemoTranslatorFacade.analyzeProgramCode(convertList(psiFiles), currentProject, sessionInfo);
             } else {
                 bindingContext = ResolveUtils.getBindingContext(convertList(psiFiles), currentProject);
             }
+        } catch (ProcessCanceledException e) {
+            throw e;
         } catch (Throwable e) {
             ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, sessionInfo.getType(), sessionInfo.getOriginUrl(), currentPsiFile.getText());
             return ResponseUtils.getErrorInJson(BackendSettings.KOTLIN_ERROR_MESSAGE
@@ -173,16 +170,28 @@ public class JsonResponseForCompletion {
             return "[]";
         }
 
+        boolean isTipsManagerCompletion = element instanceof JetSimpleNameExpression || element.getParent() instanceof JetSimpleNameExpression;
+        String prefix;
+        if (isTipsManagerCompletion) {
+            prefix = element.getText();
+        } else {
+            prefix = element.getParent().getText();
+        }
+        prefix = ResponseUtils.substringBefore(prefix, "IntellijIdeaRulezzz");
+        if (prefix.endsWith(".")) {
+            prefix = "";
+        }
+        //Descriptors of library declarations are created lazily, so filtering by name skips most of them
+        Function1<Name, Boolean> nameFilter = getNameFilter(prefix);
+
         Collection<DeclarationDescriptor> descriptors = null;
-        boolean isTipsManagerCompletion = true;
         try {
             ReferenceVariantsHelper helper = new ReferenceVariantsHelper(bindingContext, VISIBILITY_FILTER);
             if (element instanceof JetSimpleNameExpression) {
-                descriptors = helper.getReferenceVariants((JetSimpleNameExpression) element, DescriptorKindFilter.ALL, false, NAME_FILTER);
+                descriptors = helper.getReferenceVariants((JetSimpleNameExpression) element, DescriptorKindFilter.ALL, false, nameFilter);
             } else if (element.getParent() instanceof JetSimpleNameExpression) {
-                descriptors = helper.getReferenceVariants((JetSimpleNameExpression) element.getParent(), DescriptorKindFilter.ALL, false, NAME_FILTER);
+                descriptors = helper.getReferenceVariants((JetSimpleNameExpression) element.getParent(), DescriptorKindFilter.ALL, false, nameFilter);
             } else {
-                isTipsManagerCompletion = false;
                 JetScope resolutionScope;
                 PsiElement parent = element.getParent();
                 if (parent instanceof JetQualifiedExpression) {
@@ -193,12 +202,12 @@ public class JsonResponseForCompletion {
                     resolutionScope = bindingContext.get(BindingContext.RESOLUTION_SCOPE, receiverExpression);
 
                     if (expressionType != null && resolutionScope != null) {
-                        descriptors = expressionType.getMemberScope().getAllDescriptors();
+                        descriptors = expressionType.getMemberScope().getDescriptors(DescriptorKindFilter.ALL, nameFilter);
                     }
                 } else {
                     resolutionScope = bindingContext.get(BindingContext.RESOLUTION_SCOPE, (JetExpression) element);
                     if (resolutionScope != null) {
-                        descriptors = resolutionScope.getAllDescriptors();
+                        descriptors = resolutionScope.getDescriptors(DescriptorKindFilter.ALL, nameFilter);
                     } else {
                         return "[]";
                     }
@@ -215,32 +224,21 @@ public class JsonResponseForCompletion {
         ArrayNode jsonArray = new ArrayNode(JsonNodeFactory.instance);
 
         if (descriptors != null) {
-            String prefix;
-            if (isTipsManagerCompletion) {
-                prefix = element.getText();
-            } else {
-                prefix = element.getParent().getText();
-            }
-            prefix = ResponseUtils.substringBefore(prefix, "IntellijIdeaRulezzz");
-            if (prefix.endsWith(".")) {
-                prefix = "";
-            }
-
-            if (!(descriptors instanceof ArrayList)) {
-                descriptors = new ArrayList<DeclarationDescriptor>(descriptors);
+            List<CompletionVariant> variants = new ArrayList<>(descriptors.size());
+            for (DeclarationDescriptor descriptor : descriptors) {
+                variants.add(new CompletionVariant(descriptor, getPresentableText(descriptor)));
             }
 
-            Collections.sort((ArrayList<DeclarationDescriptor>) descriptors, new Comparator<DeclarationDescriptor>() {
+            Collections.sort(variants, new Comparator<CompletionVariant>() {
                 @Override
-                public int compare(DeclarationDescriptor d1, DeclarationDescriptor d2) {
-                    Pair<String, String> d1PresText = getPresentableText(d1);
-                    Pair<String, String> d2PresText = getPresentableText(d2);
-                    return (d1PresText.getFirst() + d1PresText.getSecond()).compareToIgnoreCase((d2PresText.getFirst() + d2PresText.getSecond()));
+                public int compare(CompletionVariant v1, CompletionVariant v2) {
+                    return v1.sortKey.compareToIgnoreCase(v2.sortKey);
                 }
             });
 
-            for (DeclarationDescriptor descriptor : descriptors) {
-                Pair<String, String> presentableText = getPresentableText(descriptor);
+            for (CompletionVariant variant : variants) {
+                DeclarationDescriptor descriptor = variant.descriptor;
+                Pair<String, String> presentableText = variant.presentableText;
 
                 String fullName = formatName(presentableText.getFirst(), NUMBER_OF_CHAR_IN_COMPLETION_NAME);
                 String completionText = fullName;
@@ -274,6 +272,27 @@ public class JsonResponseForCompletion {
         return jsonArray.toString();
     }
 
+    private static class CompletionVariant {
+        final DeclarationDescriptor descriptor;
+        final Pair<String, String> presentableText;
+        final String sortKey;
+
+        CompletionVariant(DeclarationDescriptor descriptor, Pair<String, String> presentableText) {
+            this.descriptor = descriptor;
+            this.presentableText = presentableText;
+            this.sortKey = presentableText.getFirst() + presentableText.getSecond();
+        }
+    }
+
+    private static Function1<Name, Boolean> getNameFilter(final String prefix) {
+        return new Function1<Name, Boolean>() {
+            @Override
+            public Boolean invoke(Name name) {
+                return prefix.isEmpty() || (!name.isSpecial() && name.asString().startsWith(prefix));
+            }
+        };
+    }
+
     private String getIconFromDescriptor(DeclarationDescriptor descriptor) {
         if (descriptor instanceof FunctionDescriptor) {
             return "method";
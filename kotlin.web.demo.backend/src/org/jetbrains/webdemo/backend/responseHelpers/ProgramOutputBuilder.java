@@ -0,0 +1,79 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.webdemo.backend.responseHelpers;
+
+import org.jetbrains.webdemo.backend.executor.ExecutorProcess;
+
+/**
+ * Builds output of user program in the format expected by the client: HTML-escaped text
+ * in {@code <outStream>} and {@code <errStream>} tags, which are escaped too.
+ * Consecutive chunks of the same stream share one tag.
+ */
+class ProgramOutputBuilder {
+    private static final String OUT_OPEN_TAG = "&amp;lt;outStream&amp;gt;";
+    private static final String OUT_CLOSE_TAG = "&amp;lt;/outStream&amp;gt;";
+    private static final String ERR_OPEN_TAG = "&amp;lt;errStream&amp;gt;";
+    private static final String ERR_CLOSE_TAG = "&amp;lt;/errStream&amp;gt;";
+
+    private final StringBuilder text = new StringBuilder();
+    private int currentStream = 0;
+
+    void append(int stream, CharSequence chunk) {
+        if (stream != currentStream) {
+            closeTag();
+            text.append(stream == ExecutorProcess.OUT_STREAM ? OUT_OPEN_TAG : ERR_OPEN_TAG);
+            currentStream = stream;
+        }
+        //Same result as ResponseUtils.escapeString, which replaces '<' and '>' before '&'
+        for (int i = 0; i < chunk.length(); i++) {
+            char c = chunk.charAt(i);
+            switch (c) {
+                case '<':
+                    text.append("&amp;lt;");
+                    break;
+                case '>':
+                    text.append("&amp;gt;");
+                    break;
+                case '&':
+                    text.append("&amp;");
+                    break;
+                default:
+                    text.append(c);
+            }
+        }
+    }
+
+    int length() {
+        return text.length();
+    }
+
+    /**
+     * @return text built since the previous call
+     */
+    String take() {
+        closeTag();
+        String result = text.toString();
+        text.setLength(0);
+        return result;
+    }
+
+    private void closeTag() {
+        if (currentStream != 0) {
+            text.append(currentStream == ExecutorProcess.OUT_STREAM ? OUT_CLOSE_TAG : ERR_CLOSE_TAG);
+            currentStream = 0;
+        }
+    }
+}
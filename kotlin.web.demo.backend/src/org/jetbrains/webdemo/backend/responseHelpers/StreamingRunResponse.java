@@ -0,0 +1,88 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.backend.responseHelpers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jetbrains.webdemo.JsonUtils;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Response of run request in streaming mode. Every element of the usual response array is sent
+ * as a separate line of JSON and flushed immediately, so output of the program is shown while it is running.
+ */
+public class StreamingRunResponse {
+    public static final String CONTENT_TYPE = "application/x-ndjson;charset=utf-8";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final HttpServletResponse response;
+    private OutputStream output;
+    private boolean clientDisconnected = false;
+
+    public StreamingRunResponse(HttpServletResponse response) {
+        this.response = response;
+    }
+
+    public void writeOutput(String text) {
+        ObjectNode element = new ObjectNode(JsonNodeFactory.instance);
+        element.put("type", "out");
+        element.put("text", text);
+        writeElement(element);
+    }
+
+    public void writeError(String text) {
+        ObjectNode element = new ObjectNode(JsonNodeFactory.instance);
+        element.put("type", "err");
+        element.put("text", text);
+        writeElement(element);
+    }
+
+    /**
+     * @param jsonArray serialized array of response elements
+     */
+    public void writeElements(String jsonArray) {
+        try {
+            for (JsonNode element : JsonUtils.getObjectMapper().readTree(jsonArray)) {
+                writeElement(element);
+            }
+        } catch (IOException e) {
+            writeError(jsonArray);
+        }
+    }
+
+    public synchronized void writeElement(JsonNode element) {
+        if (clientDisconnected) return;
+        try {
+            if (output == null) {
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setContentType(CONTENT_TYPE);
+                output = response.getOutputStream();
+            }
+            output.write(element.toString().getBytes(UTF8));
+            output.write('\n');
+            output.flush();
+        } catch (IOException e) {
+            //Program is still running, it's stopped by timeout or when it finishes
+            clientDisconnected = true;
+        }
+    }
+}
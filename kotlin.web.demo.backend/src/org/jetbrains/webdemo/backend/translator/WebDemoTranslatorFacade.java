@@ -57,10 +57,10 @@ public final class WebDemoTranslatorFacade {
 
     @SuppressWarnings("UnusedDeclaration")
     @Nullable
-    public static BindingContext analyzeProgramCode(@NotNull List<JetFile> files, BackendSessionInfo sessionInfo) {
+    public static BindingContext analyzeProgramCode(@NotNull List<JetFile> files, @NotNull Project project, BackendSessionInfo sessionInfo) {
         try {
             return TopDownAnalyzerFacadeForJS.analyzeFiles(files, new LibrarySourcesConfig.Builder(
-                    Initializer.getInstance().getEnvironment().getProject(),
+                    project,
                     "moduleId",
                     LIBRARY_FILES
             ).build()).getBindingContext();
@@ -100,7 +100,7 @@ public final class WebDemoTranslatorFacade {
                                                    @NotNull String arguments,
                                                    BackendSessionInfo sessionInfo,
                                                    Map<String, List<ErrorDescriptor>> errors) throws TranslationException {
-        Project currentProject = Initializer.getInstance().getEnvironment().getProject();
+        Project currentProject = files.get(0).getProject();
         Config config = new LibrarySourcesConfig.Builder(
                 currentProject,
                 "moduleId",
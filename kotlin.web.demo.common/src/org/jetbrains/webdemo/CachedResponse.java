@@ -0,0 +1,138 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Response body which doesn't change until the content is reloaded, e.g. example or help.
+ * Body is identified by strong ETag, so the client revalidates its copy without downloading it again,
+ * compressed bodies are created once and kept along with the original one. Every content coding has its own
+ * ETag: digest of the body with the coding as a suffix, and any of them validates the client copy.
+ */
+public class CachedResponse {
+    private final byte[] body;
+    private final String digest;
+    private byte[] gzipBody;
+    private byte[] deflateBody;
+
+    public CachedResponse(String body) {
+        this(toBytes(body));
+    }
+
+    public CachedResponse(byte[] body) {
+        this.body = body;
+        this.digest = getDigest(body);
+    }
+
+    /**
+     * @param encoding content coding of the body, null for identity
+     */
+    public String getETag(String encoding) {
+        return "\"" + (encoding == null ? digest : digest + "-" + encoding) + "\"";
+    }
+
+    /**
+     * Sends the body or 304 if the client has the same version already.
+     *
+     * @param maxAge seconds during which the client may use its copy without revalidation
+     */
+    public void write(HttpServletRequest request, HttpServletResponse response, int maxAge) throws IOException {
+        ResponseUtils.addAccessControlHeaders(request, response);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", maxAge > 0 ? "private, max-age=" + maxAge : "no-cache");
+        boolean compressible = body.length >= ResponseUtils.COMPRESSION_THRESHOLD;
+        if (compressible) {
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+        String encoding = compressible ? ResponseUtils.getAcceptedEncoding(request) : null;
+        response.setHeader("ETag", getETag(encoding));
+        if (isNotModified(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        ResponseUtils.writeBody(response, getBody(encoding), encoding);
+    }
+
+    /**
+     * If-None-Match uses weak comparison, and proxies which compress responses may make the tag weak.
+     */
+    private boolean isNotModified(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String value : ifNoneMatch.split(",")) {
+            String tag = value.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                tag = tag.substring(1, tag.length() - 1);
+                if (tag.equals(digest) || tag.startsWith(digest + "-")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private synchronized byte[] getBody(String encoding) throws IOException {
+        if (encoding == null) {
+            return body;
+        } else if (encoding.equals("gzip")) {
+            if (gzipBody == null) {
+                gzipBody = ResponseUtils.compress(body, encoding);
+            }
+            return gzipBody;
+        } else {
+            if (deflateBody == null) {
+                deflateBody = ResponseUtils.compress(body, encoding);
+            }
+            return deflateBody;
+        }
+    }
+
+    private static byte[] toBytes(String body) {
+        try {
+            return body.getBytes("UTF-8");
+        } catch (IOException e) {
+            /*Unreachable*/
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getDigest(byte[] body) {
+        try {
+            StringBuilder result = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(body)) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            /*Unreachable*/
+            throw new IllegalStateException(e);
+        }
+    }
+}
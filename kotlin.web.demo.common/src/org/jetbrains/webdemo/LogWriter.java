@@ -31,4 +31,8 @@ public class LogWriter {
     public static void logRequestInfo(String sessionId, String requestType, int status, String otherParameters) {
         ACCESS_LOGGER.info("frontend sessionId=" + sessionId + " requestType=" + requestType + " status=" + status + " " + otherParameters);
     }
+
+    public static void logRunStatistics(String sessionId, String runConfiguration, String statistics) {
+        ACCESS_LOGGER.info("backend sessionId=" + sessionId + " requestType=RUN runConf=" + runConfiguration + " " + statistics);
+    }
 }
@@ -30,8 +30,12 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class ResponseUtils {
+    //Smaller responses don't become noticeably smaller after compression
+    public static final int COMPRESSION_THRESHOLD = 1024;
     private static final List<String> URLS = new ArrayList<String>();
 
     static {
@@ -340,20 +344,75 @@ public class ResponseUtils {
         addHeadersToResponse(request, response);
         response.setStatus(errorCode);
         if(!responseBody.equals("")) {
-            try (PrintWriter writer = response.getWriter()) {
-                writer.write(responseBody);
+            String encoding = null;
+            if (responseBody.length() >= COMPRESSION_THRESHOLD) {
+                //Body is sent compressed or not depending on the request, caches should keep both variants
+                response.addHeader("Vary", "Accept-Encoding");
+                encoding = getAcceptedEncoding(request);
+            }
+            if (encoding != null) {
+                writeBody(response, compress(responseBody.getBytes("UTF-8"), encoding), encoding);
+            } else {
+                try (PrintWriter writer = response.getWriter()) {
+                    writer.write(responseBody);
+                }
             }
         }
     }
 
     public static void addHeadersToResponse(HttpServletRequest request, HttpServletResponse response) {
+        addAccessControlHeaders(request, response);
+        response.addHeader("Cache-Control", "no-cache");
+        response.setCharacterEncoding("UTF-8");
+    }
+
+    public static void addAccessControlHeaders(HttpServletRequest request, HttpServletResponse response) {
         if (isOriginAccepted(request)) {
             response.addHeader("Access-Control-Allow-Origin", request.getHeader("Origin"));
             response.addHeader("Access-Control-Allow-Methods", "GET, POST");
             response.addHeader("Access-Control-Allow-Headers", "X-Requested-With,content-type");
             response.addHeader("Access-Control-Allow-Credentials", "true");
         }
-        response.addHeader("Cache-Control", "no-cache");
-        response.setCharacterEncoding("UTF-8");
+    }
+
+    /**
+     * @return "gzip" or "deflate" if the client accepts one of them, gzip is preferred
+     */
+    public static String getAcceptedEncoding(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String value : acceptEncoding.split(",")) {
+            String[] parts = value.trim().split(";");
+            if (parts.length > 1 && parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?")) {
+                continue;
+            }
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return "gzip";
+            } else if (parts[0].trim().equalsIgnoreCase("deflate")) {
+                deflate = true;
+            }
+        }
+        return deflate ? "deflate" : null;
+    }
+
+    public static byte[] compress(byte[] body, String encoding) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (OutputStream compressor = encoding.equals("gzip") ? new GZIPOutputStream(result) : new DeflaterOutputStream(result)) {
+            compressor.write(body);
+        }
+        return result.toByteArray();
+    }
+
+    static void writeBody(HttpServletResponse response, byte[] body, String encoding) throws IOException {
+        if (encoding != null) {
+            response.setHeader("Content-Encoding", encoding);
+        }
+        response.setContentLength(body.length);
+        try (OutputStream outputStream = response.getOutputStream()) {
+            outputStream.write(body);
+        }
     }
 }
@@ -0,0 +1,66 @@
+package org.jetbrains.webdemo.executors;/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads classes of user program from bytes received by {@link ExecutorServer}, so compiled files are never written to disk.
+ */
+class ByteArrayClassLoader extends ClassLoader {
+    private static final String CLASS_EXTENSION = ".class";
+
+    private final Map<String, byte[]> files;
+
+    /**
+     * @param files file contents by path relative to the output root, e.g. "foo/FooPackage.class"
+     */
+    ByteArrayClassLoader(Map<String, byte[]> files, ClassLoader parent) {
+        super(parent);
+        this.files = files;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = files.get(name.replace('.', '/') + CLASS_EXTENSION);
+        if (bytes == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        byte[] bytes = files.get(name);
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return super.getResourceAsStream(name);
+    }
+
+    List<String> getClassNames() {
+        List<String> classNames = new ArrayList<String>();
+        for (String path : files.keySet()) {
+            if (path.endsWith(CLASS_EXTENSION)) {
+                classNames.add(path.substring(0, path.length() - CLASS_EXTENSION.length()).replace('/', '.'));
+            }
+        }
+        return classNames;
+    }
+}
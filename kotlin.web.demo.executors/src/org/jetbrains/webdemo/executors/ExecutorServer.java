@@ -0,0 +1,143 @@
+package org.jetbrains.webdemo.executors;/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Long-living executor process. Backend starts it once and sends run requests to its standard input,
+ * so user programs don't pay for JVM startup and loading of kotlin runtime on every run.
+ * Every program is loaded from the received bytes by a fresh class loader and runs in its own thread group.
+ *
+ * Request:  command (UTF), number of class files (int), class files (relative path (UTF), length (int), bytes),
+ *           number of arguments (int), arguments (UTF).
+ * Response: frames, each starts with frame type (byte).
+ *           Output frames are sent while the program is running, frame type is id of the standard stream
+ *           ({@link ProgramOutput#OUT_STREAM} or {@link ProgramOutput#ERR_STREAM}): length (int), written bytes.
+ *           Result frame ({@link #RESULT_FRAME}) is the last one: reusable (boolean), output is too long (boolean),
+ *           CPU time limit is exceeded (boolean), CPU time in ms (long), peak heap in bytes (long),
+ *           number of garbage collections (long), wall time in ms (long), result length (int), result (UTF-8 bytes).
+ * Keep in sync with org.jetbrains.webdemo.backend.executor.ExecutorProcess.
+ */
+public class ExecutorServer {
+    public static final String JAVA_COMMAND = "java";
+    public static final String JUNIT_COMMAND = "junit";
+    static final int RESULT_FRAME = 0;
+
+    private static final PrintStream ignoreStream = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+        }
+    });
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long maxOutputSize = args.length > 0 ? Long.parseLong(args[0]) : Long.MAX_VALUE;
+        long cpuTimeLimit = args.length > 1 ? Long.parseLong(args[1]) : Long.MAX_VALUE;
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream responses = new DataOutputStream(new BufferedOutputStream(System.out));
+        //User programs must not read requests or corrupt responses
+        System.setIn(new ByteArrayInputStream(new byte[0]));
+        System.setOut(ignoreStream);
+
+        int runNumber = 0;
+        while (true) {
+            String command;
+            try {
+                command = requests.readUTF();
+            } catch (EOFException e) {
+                return;
+            }
+            Map<String, byte[]> files = new HashMap<String, byte[]>();
+            int filesCount = requests.readInt();
+            for (int i = 0; i < filesCount; i++) {
+                String path = requests.readUTF();
+                byte[] content = new byte[requests.readInt()];
+                requests.readFully(content);
+                files.put(path, content);
+            }
+            String[] arguments = new String[requests.readInt()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = requests.readUTF();
+            }
+
+            OutputCounter.reset(maxOutputSize);
+            ThreadGroup threadGroup = new ThreadGroup("run" + (++runNumber));
+            FramedOutput output = new FramedOutput(responses);
+            RunThread runThread = new RunThread(threadGroup, command, files, arguments, output);
+            ResourceMonitor monitor = new ResourceMonitor(cpuTimeLimit);
+            runThread.start();
+            while (runThread.isAlive() && !OutputCounter.isExceeded() && !monitor.isCpuTimeLimitExceeded()) {
+                runThread.join(100);
+                monitor.sample();
+                output.flush();
+            }
+            monitor.stop();
+            output.close();
+
+            boolean outputIsTooLong = OutputCounter.isExceeded();
+            boolean cpuTimeLimitExceeded = runThread.isAlive() && monitor.isCpuTimeLimitExceeded();
+            //Threads started by user program can write to the output of the next program. They are not always
+            //in the group of the run: the program can start a thread in the parent group
+            boolean reusable = !outputIsTooLong && !cpuTimeLimitExceeded && monitor.getRunThreads().isEmpty();
+            byte[] result = (outputIsTooLong || cpuTimeLimitExceeded ? "" : runThread.result).getBytes("UTF-8");
+            responses.writeByte(RESULT_FRAME);
+            responses.writeBoolean(reusable);
+            responses.writeBoolean(outputIsTooLong);
+            responses.writeBoolean(cpuTimeLimitExceeded);
+            responses.writeLong(monitor.getCpuTime());
+            responses.writeLong(monitor.getPeakHeap());
+            responses.writeLong(monitor.getGcCount());
+            responses.writeLong(monitor.getWallTime());
+            responses.writeInt(result.length);
+            responses.write(result);
+            responses.flush();
+            if (!reusable) {
+                return;
+            }
+        }
+    }
+
+    private static class RunThread extends Thread {
+        private final String command;
+        private final Map<String, byte[]> files;
+        private final String[] arguments;
+        private final ProgramOutput output;
+        private volatile String result = "";
+
+        RunThread(ThreadGroup group, String command, Map<String, byte[]> files, String[] arguments, ProgramOutput output) {
+            super(group, "main");
+            this.command = command;
+            this.files = files;
+            this.arguments = arguments;
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ByteArrayClassLoader classLoader = new ByteArrayClassLoader(files, ExecutorServer.class.getClassLoader());
+                if (command.equals(JUNIT_COMMAND)) {
+                    result = JunitExecutor.execute(classLoader, classLoader.getClassNames());
+                } else {
+                    result = JavaExecutor.execute(classLoader, arguments, output);
+                }
+            } catch (Throwable e) {
+                result = command.equals(JUNIT_COMMAND) ? JunitExecutor.getErrorOutput(e) : JavaExecutor.getErrorOutput(e);
+            }
+        }
+    }
+}
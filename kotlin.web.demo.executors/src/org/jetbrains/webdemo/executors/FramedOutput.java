@@ -0,0 +1,80 @@
+package org.jetbrains.webdemo.executors;/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Sends output of user program to the backend in frames: stream id (byte), length (int), bytes.
+ * Consecutive writes to the same stream are merged into one frame. Output is buffered, so the program
+ * doesn't wait for the backend on every write; the buffer is bounded, and the program is blocked
+ * while the backend doesn't read previous frames.
+ */
+class FramedOutput extends ProgramOutput {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final DataOutputStream responses;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferStream = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    FramedOutput(DataOutputStream responses) {
+        this.responses = responses;
+    }
+
+    @Override
+    synchronized void write(int stream, byte[] b, int offset, int length) throws IOException {
+        if (closed) return;
+        if (stream != bufferStream || count + length > buffer.length) {
+            flushBuffer();
+        }
+        if (length > buffer.length) {
+            writeFrame(stream, b, offset, length);
+        } else {
+            System.arraycopy(b, offset, buffer, count, length);
+            count += length;
+            bufferStream = stream;
+        }
+    }
+
+    synchronized void flush() throws IOException {
+        if (closed) return;
+        flushBuffer();
+        responses.flush();
+    }
+
+    /**
+     * Sends buffered output. Output written after this call is dropped.
+     */
+    synchronized void close() throws IOException {
+        flush();
+        closed = true;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            writeFrame(bufferStream, buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void writeFrame(int stream, byte[] b, int offset, int length) throws IOException {
+        responses.writeByte(stream);
+        responses.writeInt(length);
+        responses.write(b, offset, length);
+    }
+}
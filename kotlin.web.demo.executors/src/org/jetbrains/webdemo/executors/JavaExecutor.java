@@ -17,7 +17,7 @@ package org.jetbrains.webdemo.executors;/*
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -27,22 +27,52 @@ import java.util.Arrays;
  * Created by Semyon.Atamas on 11/27/2014.
  */
 public class JavaExecutor {
-    private static ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    private static ErrorStream errorOutputStream = new ErrorStream(outputStream);
-    private static OutStream standardOutputStream = new OutStream(outputStream);
 
     public static void main(String[] args) {
         PrintStream defaultOutputStream = System.out;
         try {
-            System.setOut(new PrintStream(standardOutputStream));
-            System.setErr(new PrintStream(errorOutputStream));
+            String output = execute(JavaExecutor.class.getClassLoader(), args);
+            System.setOut(defaultOutputStream);
+            System.out.print(output);
+        } catch (Throwable e) {
+            System.setOut(defaultOutputStream);
+            System.out.print(getErrorOutput(e));
+        }
+
+    }
+
+    /**
+     * Runs main method of the class args[0] loaded by the given class loader and returns serialized {@link RunOutput}.
+     * Standard streams are restored after execution, so this method can be called several times in one JVM.
+     */
+    static String execute(ClassLoader classLoader, String[] args) throws IOException {
+        TaggedOutput output = new TaggedOutput();
+        RunOutput outputObj = run(classLoader, args, output);
+        outputObj.text = output.getText();
+        return serialize(outputObj);
+    }
+
+    /**
+     * Same as {@link #execute(ClassLoader, String[])}, but output of the program is written to the given stream
+     * while it is running, and text of the returned {@link RunOutput} is empty.
+     */
+    static String execute(ClassLoader classLoader, String[] args, ProgramOutput output) throws IOException {
+        return serialize(run(classLoader, args, output));
+    }
+
+    private static RunOutput run(ClassLoader classLoader, String[] args, ProgramOutput output) {
+        PrintStream defaultOutputStream = System.out;
+        PrintStream defaultErrorStream = System.err;
+        RunOutput outputObj = new RunOutput();
+        try {
+            System.setOut(new PrintStream(new StandardStream(output, ProgramOutput.OUT_STREAM)));
+            System.setErr(new PrintStream(new StandardStream(output, ProgramOutput.ERR_STREAM)));
 
-            RunOutput outputObj = new RunOutput();
             String className;
             if (args.length > 0) {
                 className = args[0];
                 try {
-                    Method mainMethod = Class.forName(className).getMethod("main", String[].class);
+                    Method mainMethod = Class.forName(className, true, classLoader).getMethod("main", String[].class);
                     mainMethod.invoke(null, (Object) Arrays.copyOfRange(args, 1, args.length));
                 } catch (InvocationTargetException e) {
                     outputObj.exception = e.getCause();
@@ -57,21 +87,23 @@ public class JavaExecutor {
 
             System.out.flush();
             System.err.flush();
+        } finally {
             System.setOut(defaultOutputStream);
-            outputObj.text = outputStream.toString()
-                    .replaceAll("</errStream><errStream>", "")
-                    .replaceAll("</outStream><outStream>", "");
-            ObjectMapper objectMapper = new ObjectMapper();
-            SimpleModule module = new SimpleModule();
-            module.addSerializer(Throwable.class, new ThrowableSerializer());
-            objectMapper.registerModule(module);
-            System.out.print(objectMapper.writeValueAsString(outputObj));
-        } catch (Throwable e) {
-            System.setOut(defaultOutputStream);
-            System.out.println("{\"text\":\"<errStream>" + e.getClass().getName() + ": " + e.getMessage());
-            System.out.print("</errStream>\"}");
+            System.setErr(defaultErrorStream);
         }
+        return outputObj;
+    }
+
+    private static String serialize(RunOutput outputObj) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(Throwable.class, new ThrowableSerializer());
+        objectMapper.registerModule(module);
+        return objectMapper.writeValueAsString(outputObj);
+    }
 
+    static String getErrorOutput(Throwable e) {
+        return "{\"text\":\"<errStream>" + e.getClass().getName() + ": " + e.getMessage() + "\n</errStream>\"}";
     }
 }
 
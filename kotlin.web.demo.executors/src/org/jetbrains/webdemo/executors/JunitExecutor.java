@@ -40,11 +40,36 @@ public class JunitExecutor {
 
 
     public static void main(String[] args) {
+        try {
+            String result = execute(JunitExecutor.class.getClassLoader(), getAllClassesFromTheDir(new File(args[0]), ""));
+            System.setOut(standardOutput);
+            System.out.print(result);
+        } catch (Throwable e) {
+            System.setOut(standardOutput);
+            System.out.print("[\"");
+            e.printStackTrace();
+            System.out.print("\"]");
+        }
+    }
+
+    /**
+     * Runs all tests found in the given classes loaded by the given class loader
+     * and returns serialized list of {@link TestRunInfo}. Standard streams are restored after execution.
+     */
+    static String execute(ClassLoader classLoader, List<String> classNames) throws IOException {
+        PrintStream defaultOutputStream = System.out;
+        PrintStream defaultErrorStream = System.err;
+        output.clear();
         try {
             JUnitCore jUnitCore = new JUnitCore();
             jUnitCore.addListener(new MyRunListener());
-            List<Class> classes = getAllClassesFromTheDir(new File(args[0]));
-            for (Class cl : classes) {
+            for (String className : classNames) {
+                Class cl;
+                try {
+                    cl = Class.forName(className, true, classLoader);
+                } catch (ClassNotFoundException e) {
+                    continue;
+                }
                 Request request = Request.aClass(cl);
                 if(request.getRunner() instanceof ErrorReportingRunner) continue;
                 String classFileName = cl.getName().replace('.', '/') + ".class";
@@ -52,58 +77,33 @@ public class JunitExecutor {
                 testClass = MethodsFinder.readMethodPositions(stream, classFileName);
                 jUnitCore.run(request);
             }
-            try {
-                ObjectMapper objectMapper = new ObjectMapper();
-                SimpleModule module = new SimpleModule();
-                module.addSerializer(Throwable.class, new ThrowableSerializer());
-                objectMapper.registerModule(module);
-                System.setOut(standardOutput);
-                System.out.print(objectMapper.writeValueAsString(output));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        } catch (Throwable e) {
-            System.setOut(standardOutput);
-            System.out.print("[\"");
-            e.printStackTrace();
-            System.out.print("\"]");
+        } finally {
+            System.setOut(defaultOutputStream);
+            System.setErr(defaultErrorStream);
         }
+        ObjectMapper objectMapper = new ObjectMapper();
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(Throwable.class, new ThrowableSerializer());
+        objectMapper.registerModule(module);
+        return objectMapper.writeValueAsString(output);
     }
 
-    private static List<Class> getAllClassesFromTheDir(File directory) {
-        List<Class> classes = new ArrayList<Class>();
-        String prefix = "";
-        for (File file : directory.listFiles()) {
-            if (file.isDirectory()) {
-                classes.addAll(getAllClassesFromTheDir(file, prefix));
-            } else {
-                if (file.getName().endsWith(".class")) {
-                    try {
-                        classes.add(Class.forName(prefix + file.getName().substring(0, file.getName().length() - ".class".length())));
-                    } catch (ClassNotFoundException e) {
-                    }
-                }
-            }
-        }
-        return classes;
+    static String getErrorOutput(Throwable e) {
+        return "[\"\"]";
     }
 
-    private static List<Class> getAllClassesFromTheDir(File directory, String prefix) {
-        List<Class> classes = new ArrayList<Class>();
-        prefix += directory.getName() + ".";
+    private static List<String> getAllClassesFromTheDir(File directory, String prefix) {
+        List<String> classNames = new ArrayList<String>();
         for (File file : directory.listFiles()) {
             if (file.isDirectory()) {
-                classes.addAll(getAllClassesFromTheDir(file, prefix));
+                classNames.addAll(getAllClassesFromTheDir(file, prefix + file.getName() + "."));
             } else {
                 if (file.getName().endsWith(".class")) {
-                    try {
-                        classes.add(Class.forName(prefix + file.getName().substring(0, file.getName().length() - ".class".length())));
-                    } catch (ClassNotFoundException e) {
-                    }
+                    classNames.add(prefix + file.getName().substring(0, file.getName().length() - ".class".length()));
                 }
             }
         }
-        return classes;
+        return classNames;
     }
 
 
@@ -134,9 +134,7 @@ class MyRunListener extends RunListener {
         public void write(int b) throws IOException {
         }
     });
-    private ByteArrayOutputStream testOutputStream;
-    private ErrorStream errorStream;
-    private OutStream outStream;
+    private TaggedOutput testOutput;
     private TestRunInfo currentTestRunInfo;
 
     @Override
@@ -148,11 +146,9 @@ class MyRunListener extends RunListener {
         currentTestRunInfo.methodPosition = JunitExecutor.testClass.getMethodPosition(currentTestRunInfo.methodName);
 
         JunitExecutor.output.add(currentTestRunInfo);
-        testOutputStream = new ByteArrayOutputStream();
-        errorStream = new ErrorStream(testOutputStream);
-        outStream = new OutStream(testOutputStream);
-        System.setOut(new PrintStream(outStream));
-        System.setErr(new PrintStream(errorStream));
+        testOutput = new TaggedOutput();
+        System.setOut(new PrintStream(new StandardStream(testOutput, ProgramOutput.OUT_STREAM)));
+        System.setErr(new PrintStream(new StandardStream(testOutput, ProgramOutput.ERR_STREAM)));
         startTime = System.currentTimeMillis();
     }
 
@@ -175,9 +171,11 @@ class MyRunListener extends RunListener {
 
         TestRunInfo testRunInfo = JunitExecutor.output.get(JunitExecutor.output.size() - 1);
         testRunInfo.executionTime = System.currentTimeMillis() - startTime;
-        testRunInfo.output = testOutputStream.toString()
-                .replaceAll("</errStream><errStream>", "")
-                .replaceAll("</outStream><outStream>", "");
+        try {
+            testRunInfo.output = testOutput.getText();
+        } catch (IOException e) {
+            testRunInfo.output = "";
+        }
 
         System.setOut(ignoreStream);
     }
@@ -0,0 +1,41 @@
+package org.jetbrains.webdemo.executors;/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Counts bytes written by user program to standard streams. Executor server uses it to stop
+ * programs that produce too much output without waiting for the timeout.
+ */
+class OutputCounter {
+    private static volatile long limit = Long.MAX_VALUE;
+    private static volatile long written = 0;
+
+    static synchronized void reset(long newLimit) {
+        limit = newLimit;
+        written = 0;
+    }
+
+    /**
+     * @return false if output limit is exceeded and bytes should be dropped
+     */
+    static synchronized boolean add(int count) {
+        written += count;
+        return written <= limit;
+    }
+
+    static boolean isExceeded() {
+        return written > limit;
+    }
+}
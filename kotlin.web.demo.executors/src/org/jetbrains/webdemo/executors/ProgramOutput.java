@@ -0,0 +1,28 @@
+package org.jetbrains.webdemo.executors;/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * Destination of the output of user program. Bytes written to standard output and standard error
+ * are distinguished by stream id.
+ */
+abstract class ProgramOutput {
+    static final int OUT_STREAM = 1;
+    static final int ERR_STREAM = 2;
+
+    abstract void write(int stream, byte[] b, int offset, int length) throws IOException;
+}
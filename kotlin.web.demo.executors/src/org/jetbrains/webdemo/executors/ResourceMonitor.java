@@ -0,0 +1,137 @@
+package org.jetbrains.webdemo.executors;/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.management.*;
+import java.util.*;
+
+/**
+ * Measures resources used by one run: CPU time of the threads of the run, peak heap usage,
+ * number of garbage collections and wall time. CPU time of a thread is sampled by {@link #sample()},
+ * so time used by a thread after the last sample before its death is lost.
+ * Threads of the run are all threads started after the monitor in the thread group of the server:
+ * user program can start threads in any descendant of it, but not in the system group.
+ */
+class ResourceMonitor {
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private final ThreadGroup serverGroup;
+    private final Set<Thread> serverThreads;
+    private final long cpuTimeLimit;
+    private final Map<Long, Long> threadCpuTimes = new HashMap<Long, Long>();
+    private final long startTime;
+    private final long startGcCount;
+    private long wallTime = 0;
+    private long gcCount = 0;
+
+    /**
+     * Must be created by the server thread before the run starts.
+     *
+     * @param cpuTimeLimit in milliseconds
+     */
+    ResourceMonitor(long cpuTimeLimit) {
+        this.serverGroup = Thread.currentThread().getThreadGroup();
+        this.serverThreads = new HashSet<Thread>(enumerate(serverGroup));
+        this.cpuTimeLimit = cpuTimeLimit;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+        startGcCount = getTotalGcCount();
+        startTime = System.nanoTime();
+    }
+
+    void sample() {
+        for (Thread thread : getRunThreads()) {
+            long time = threadBean.isThreadCpuTimeSupported() ? threadBean.getThreadCpuTime(thread.getId()) : -1;
+            if (time != -1) {
+                threadCpuTimes.put(thread.getId(), time);
+            }
+        }
+    }
+
+    /**
+     * @return live threads started by the run, wherever user program has put them
+     */
+    List<Thread> getRunThreads() {
+        List<Thread> result = enumerate(serverGroup);
+        result.removeAll(serverThreads);
+        return result;
+    }
+
+    void stop() {
+        sample();
+        wallTime = (System.nanoTime() - startTime) / 1000000;
+        gcCount = getTotalGcCount() - startGcCount;
+    }
+
+    boolean isCpuTimeLimitExceeded() {
+        return getCpuTime() > cpuTimeLimit;
+    }
+
+    /**
+     * @return milliseconds
+     */
+    long getCpuTime() {
+        long result = 0;
+        for (long time : threadCpuTimes.values()) {
+            result += time;
+        }
+        return result / 1000000;
+    }
+
+    /**
+     * @return bytes, including memory used by the executor itself
+     */
+    long getPeakHeap() {
+        long result = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                result += pool.getPeakUsage().getUsed();
+            }
+        }
+        return result;
+    }
+
+    long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * @return milliseconds
+     */
+    long getWallTime() {
+        return wallTime;
+    }
+
+    private static List<Thread> enumerate(ThreadGroup group) {
+        Thread[] threads;
+        int count;
+        do {
+            threads = new Thread[group.activeCount() + 16];
+            count = group.enumerate(threads, true);
+        } while (count == threads.length);
+        return new ArrayList<Thread>(Arrays.asList(threads).subList(0, count));
+    }
+
+    private static long getTotalGcCount() {
+        long result = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, collector.getCollectionCount());
+        }
+        return result;
+    }
+}
@@ -1,5 +1,5 @@
 package org.jetbrains.webdemo.executors;/*
- * Copyright 2000-2014 JetBrains s.r.o.
+ * Copyright 2000-2015 JetBrains s.r.o.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,33 +18,26 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 /**
- * Created by Semyon.Atamas on 11/20/2014.
+ * Standard stream of user program. Counts written bytes in {@link OutputCounter}
+ * and drops them if the output limit is exceeded.
  */
-class OutStream extends OutputStream {
-    private OutputStream outputStream;
+class StandardStream extends OutputStream {
+    private final ProgramOutput output;
+    private final int stream;
 
-    OutStream(OutputStream outputStream) {
-        this.outputStream = outputStream;
+    StandardStream(ProgramOutput output, int stream) {
+        this.output = output;
+        this.stream = stream;
     }
 
     @Override
     public void write(int b) throws IOException {
-        outputStream.write("<outStream>".getBytes());
-        outputStream.write(b);
-        outputStream.write("</outStream>".getBytes());
-    }
-
-    @Override
-    public void write(byte[] b) throws IOException {
-        outputStream.write("<outStream>".getBytes());
-        outputStream.write(b);
-        outputStream.write("</outStream>".getBytes());
+        write(new byte[]{(byte) b}, 0, 1);
     }
 
     @Override
     public void write(byte[] b, int offset, int length) throws IOException {
-        outputStream.write("<outStream>".getBytes());
-        outputStream.write(b, offset, length);
-        outputStream.write("</outStream>".getBytes());
+        if (!OutputCounter.add(length)) return;
+        output.write(stream, b, offset, length);
     }
 }
@@ -0,0 +1,54 @@
+package org.jetbrains.webdemo.executors;/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Collects output of user program as text with {@code <outStream>} and {@code <errStream>} tags.
+ * Consecutive writes to the same stream share one tag.
+ */
+class TaggedOutput extends ProgramOutput {
+    private static final byte[] OUT_OPEN_TAG = "<outStream>".getBytes();
+    private static final byte[] OUT_CLOSE_TAG = "</outStream>".getBytes();
+    private static final byte[] ERR_OPEN_TAG = "<errStream>".getBytes();
+    private static final byte[] ERR_CLOSE_TAG = "</errStream>".getBytes();
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private int currentStream = 0;
+
+    @Override
+    synchronized void write(int stream, byte[] b, int offset, int length) throws IOException {
+        if (stream != currentStream) {
+            closeTag();
+            output.write(stream == OUT_STREAM ? OUT_OPEN_TAG : ERR_OPEN_TAG);
+            currentStream = stream;
+        }
+        output.write(b, offset, length);
+    }
+
+    synchronized String getText() throws IOException {
+        closeTag();
+        return output.toString();
+    }
+
+    private void closeTag() throws IOException {
+        if (currentStream != 0) {
+            output.write(currentStream == OUT_STREAM ? OUT_CLOSE_TAG : ERR_CLOSE_TAG);
+            currentStream = 0;
+        }
+    }
+}
@@ -161,6 +161,16 @@ object Application {
                 }
                 statusBarView.setStatus(ActionStatusMessage.run_java_ok)
             },
+            onOutput = { data, project ->
+                if (data.type == "errors") {
+                    problemsView.addMessages(getErrorsMapFromObject(data.errors, project))
+                    editor.showDiagnostics(getErrorsMapFromObject(data.errors, project))
+                } else if (data.type == "info") {
+                    generatedCodeView.setOutput(data)
+                } else {
+                    consoleView.appendOutput(data)
+                }
+            },
             onErrorsFound = { data, project ->
                 data.forEach { data ->
                     if (data.type == "errors") {
@@ -45,8 +45,10 @@ class CompletionProvider(
                         "line" to cursor.line,
                         "ch" to cursor.ch
                 ),
-                success = { completionProposals: Array<CompletionProposal> ->
+                success = { completionProposals: Array<CompletionProposal>? ->
                     isLoadingCompletion = false
+                    //Request was superseded by a newer one
+                    if (completionProposals == null) return@ajax
                     onSuccess()
                     callback(completionProposals)
                 },
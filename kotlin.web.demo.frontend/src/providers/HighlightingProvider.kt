@@ -30,6 +30,8 @@ class HighlightingProvider(
                 //runConf is unused parameter. It's added to url for useful access logs
                 url = generateAjaxUrl("highlight", hashMapOf("runConf" to project.confType)),
                 success = { data ->
+                    //Request was superseded by a newer one, its result will be shown instead
+                    if (data == null) return@ajax
                     try {
                         val errors = getErrorsMapFromObject(data, project)
                         onSuccess(errors)
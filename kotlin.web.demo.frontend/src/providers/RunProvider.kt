@@ -18,6 +18,7 @@ package providers
 
 import application.Application
 import model.Project
+import org.w3c.xhr.XMLHttpRequest
 import utils.*
 import views.Configuration
 import views.ConfigurationType
@@ -25,12 +26,15 @@ import views.ConfigurationTypeRunner
 
 class RunProvider(
         private val onSuccess: (List<dynamic>, Project) -> Unit,
+        private val onOutput: (dynamic, Project) -> Unit,
         private val onErrorsFound: (dynamic, Project) -> Unit,
         private val onComplete: () -> Unit,
         private val onFail: (String) -> Unit
 ) {
     fun run(configuration: Configuration, project: Project) {
-        if (configuration.type.runner == ConfigurationTypeRunner.JAVA) {
+        if (configuration.type == ConfigurationType.JAVA) {
+            runJavaStreaming(project)
+        } else if (configuration.type.runner == ConfigurationTypeRunner.JAVA) {
             runJava(project)
         } else {
             loadJsFromServer(project)
@@ -94,6 +98,60 @@ class RunProvider(
 
     }
 
+    //Response contains one JSON element per line, output elements are sent while the program is running
+    private fun runJavaStreaming(project: Project) {
+        val request = XMLHttpRequest()
+        var processedLength = 0
+        var errorsFound = false
+        fun processLines() {
+            val text = request.responseText
+            var lineEnd = text.indexOf("\n", processedLength)
+            while (lineEnd != -1) {
+                val element: dynamic = JSON.parse(text.substring(processedLength, lineEnd))
+                processedLength = lineEnd + 1
+                lineEnd = text.indexOf("\n", processedLength)
+                if (!checkDataForErrors(arrayOf(element))) {
+                    errorsFound = true
+                    onErrorsFound(arrayOf(element), project)
+                } else {
+                    onOutput(element, project)
+                }
+            }
+        }
+        //runConf is unused parameter. It's added to url for useful access logs
+        request.open("POST", generateAjaxUrl("run", hashMapOf("runConf" to project.confType, "stream" to "true")))
+        request.setRequestHeader("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8")
+        request.onprogress = {
+            if (request.status == 200) {
+                try {
+                    processLines()
+                } catch (e: Throwable) {
+                    console.log(e)
+                }
+            }
+        }
+        request.onload = {
+            try {
+                if (request.status == 200) {
+                    processLines()
+                    if (!errorsFound) onSuccess(arrayListOf(), project)
+                } else if (request.responseText != "") {
+                    onFail(request.responseText)
+                } else {
+                    onFail(request.statusText)
+                }
+            } catch (e: Throwable) {
+                console.log(e)
+            }
+            onComplete()
+        }
+        request.onerror = {
+            onFail("error : " + request.statusText)
+            onComplete()
+        }
+        request.send("project=" + encodeURIComponent(JSON.stringify(project)))
+    }
+
     fun loadJsFromServer(project: Project) {
         var runConfiguration = project.confType
         ajax(
@@ -156,4 +214,7 @@ class RunProvider(
                 }
         )
     }
-}
\ No newline at end of file
+}
+
+native
+private fun encodeURIComponent(s: String): String
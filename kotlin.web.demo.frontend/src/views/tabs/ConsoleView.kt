@@ -26,8 +26,11 @@ class ConsoleView(
         private val element: HTMLDivElement,
         private val tabs: dynamic
 ) {
+    private var streamView: OutputView? = null
+
     fun clear() {
         element.innerHTML = ""
+        streamView = null
     }
 
     fun writeException(data: dynamic) {
@@ -58,7 +61,19 @@ class ConsoleView(
     }
 
     fun setOutput(data: dynamic) {
-        val outputView = prepareTab()
+        printOutput(prepareTab(), data)
+    }
+
+    /**
+     * Adds data to the output of the current run instead of replacing it.
+     */
+    fun appendOutput(data: dynamic) {
+        val outputView = streamView ?: prepareTab()
+        streamView = outputView
+        printOutput(outputView, data)
+    }
+
+    private fun printOutput(outputView: OutputView, data: dynamic) {
         if (data.type == "jsException") {
             if (data.exception.stack != null && data.exception.stack != "") {
                 outputView.printErrorLine(data.exception.stack)
@@ -16,13 +16,26 @@
 
 package org.jetbrains.webdemo;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class ApplicationSettings {
     public static final String DATABASE_VERSION = "1.0";
     public static String WEBAPP_ROOT_DIRECTORY = "";
-    public static String BACKEND_URL = "";
+    public static List<String> BACKEND_URLS = new ArrayList<>();
+    public static int BACKEND_MAX_CONNECTIONS = 32;
+    //Longer than the longest backend request: admission and environment waits, compilation and execution
+    public static int BACKEND_READ_TIMEOUT = 60000; //milliseconds
+    public static int BACKEND_HEALTH_CHECK_INTERVAL = 5000; //milliseconds
+    public static boolean BACKEND_SESSION_PINNING = false;
     public static String EXAMPLES_DIRECTORY = "examples";
     public static String HELP_FOR_WORDS = "helpWords.xml";
     public static boolean LOAD_TEST_VERSION_OF_EXAMPLES = false;
+    public static int STATIC_CONTENT_MAX_AGE = 3600; //seconds
+    public static long PROJECTS_CACHE_SIZE = 32 * 1024 * 1024; //bytes
+    public static long PROJECTS_CACHE_TTL = 60 * 1000; //milliseconds
+    public static int FILE_SAVE_DELAY = 2000; //milliseconds
+    public static String FILE_SAVES_JOURNAL_DIRECTORY = "journal";
     public static OauthCredentials GITHUB_OAUTH_CREDENTIALS = new OauthCredentials();
     public static OauthCredentials GOOGLE_OAUTH_CREDENTIALS = new OauthCredentials();
     public static OauthCredentials FACEBOOK_OAUTH_CREDENTIALS = new OauthCredentials();
@@ -27,10 +27,32 @@ public class CommandRunner {
             System.err.println("Empty value for setting: " + setting);
         } else if (setting.equals("app_output_dir")) {
             CommonSettings.LOGS_DIRECTORY = value + File.separator + "logs";
+            ApplicationSettings.FILE_SAVES_JOURNAL_DIRECTORY = value + File.separator + "journal";
             System.setProperty("kotlin.web.demo.log4j", value);
         } else if (setting.equals("backend_url")) {
-            ApplicationSettings.BACKEND_URL = value;
-        }else if (setting.equals("is_test_version")) {
+            ApplicationSettings.BACKEND_URLS.clear();
+            for (String url : value.split(",")) {
+                if (!url.trim().isEmpty()) {
+                    ApplicationSettings.BACKEND_URLS.add(url.trim());
+                }
+            }
+        } else if (setting.equals("backend_max_connections")) {
+            ApplicationSettings.BACKEND_MAX_CONNECTIONS = Integer.parseInt(value);
+        } else if (setting.equals("backend_read_timeout")) {
+            ApplicationSettings.BACKEND_READ_TIMEOUT = Integer.parseInt(value);
+        } else if (setting.equals("projects_cache_size")) {
+            ApplicationSettings.PROJECTS_CACHE_SIZE = Long.parseLong(value);
+        } else if (setting.equals("projects_cache_ttl")) {
+            ApplicationSettings.PROJECTS_CACHE_TTL = Long.parseLong(value);
+        } else if (setting.equals("file_save_delay")) {
+            ApplicationSettings.FILE_SAVE_DELAY = Integer.parseInt(value);
+        } else if (setting.equals("static_content_max_age")) {
+            ApplicationSettings.STATIC_CONTENT_MAX_AGE = Integer.parseInt(value);
+        } else if (setting.equals("backend_health_check_interval")) {
+            ApplicationSettings.BACKEND_HEALTH_CHECK_INTERVAL = Integer.parseInt(value);
+        } else if (setting.equals("backend_session_pinning")) {
+            ApplicationSettings.BACKEND_SESSION_PINNING = Boolean.parseBoolean(value);
+        } else if (setting.equals("is_test_version")) {
             CommonSettings.IS_TEST_VERSION = Boolean.parseBoolean(value);
         } else if (setting.equals("google_key")) {
             ApplicationSettings.GOOGLE_OAUTH_CREDENTIALS.KEY = value;
@@ -0,0 +1,428 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.database;
+
+import org.jetbrains.webdemo.ApplicationSettings;
+import org.jetbrains.webdemo.ErrorWriter;
+import org.jetbrains.webdemo.session.SessionInfo;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for file saves. Save is acknowledged as soon as it is written to the local journal.
+ * Saves of the same file made within {@link ApplicationSettings#FILE_SAVE_DELAY} are written to database as one
+ * update, updates of all files are sent in one batch. Journal is replayed on start, so acknowledged saves survive
+ * a crash. If database rejects the batch, saves are written one by one, and a save rejected
+ * {@link #MAX_WRITE_ATTEMPTS} times is dropped and reported, so it doesn't hold back saves of other files.
+ */
+class FileSaveBuffer {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String JOURNAL_PREFIX = "file_saves.";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final DataSource dataSource;
+    private final Object flushLock = new Object();
+    private Map<String, PendingSave> pending = new LinkedHashMap<>();
+    private Map<String, PendingSave> flushing = Collections.emptyMap();
+    private File journalDirectory;
+    private long journalSequence = 0;
+    private FileChannel journal;
+    private ScheduledExecutorService flusher;
+    private long failedFlushes = 0;
+    private long rejectedSaves = 0;
+    private long droppedSaves = 0;
+
+    FileSaveBuffer(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Replays journal left by the previous run and starts periodic flushing.
+     */
+    public void start() throws IOException {
+        synchronized (this) {
+            journalDirectory = new File(ApplicationSettings.FILE_SAVES_JOURNAL_DIRECTORY);
+            if (!journalDirectory.isDirectory() && !journalDirectory.mkdirs()) {
+                throw new IOException("Can't create journal directory " + journalDirectory.getAbsolutePath());
+            }
+            List<File> segments = getJournalSegments();
+            for (File segment : segments) {
+                readJournal(segment);
+                journalSequence = Math.max(journalSequence, getSequence(segment));
+            }
+            if (pending.isEmpty()) {
+                for (File segment : segments) {
+                    segment.delete();
+                }
+            }
+            journal = openJournal(++journalSequence);
+        }
+        flush();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "file-saves-flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, ApplicationSettings.FILE_SAVE_DELAY, ApplicationSettings.FILE_SAVE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+        flush();
+        synchronized (this) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Close file saves journal");
+            }
+        }
+    }
+
+    public synchronized void save(int ownerId, String fileId, String content) throws IOException {
+        PendingSave save = new PendingSave(ownerId, fileId, content);
+        journal.write(ByteBuffer.wrap(save.toBytes()));
+        journal.force(false);
+        pending.remove(fileId);
+        pending.put(fileId, save);
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending.isEmpty() && flushing.isEmpty();
+    }
+
+    public synchronized boolean isPending(String fileId) {
+        return pending.containsKey(fileId) || flushing.containsKey(fileId);
+    }
+
+    public synchronized Map<String, Long> getStatistics() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("pending", (long) (pending.size() + flushing.size()));
+        result.put("failedFlushes", failedFlushes);
+        result.put("rejectedSaves", rejectedSaves);
+        result.put("droppedSaves", droppedSaves);
+        return result;
+    }
+
+    /**
+     * Writes all pending saves to database. If saves are being written by another thread, waits for it first,
+     * so after return database contains all saves acknowledged before the call unless database is unavailable
+     * or rejects some of them.
+     *
+     * @return false if some saves are left pending
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            Collection<PendingSave> saves;
+            long lastClosedSequence;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return true;
+                }
+                try {
+                    FileChannel newJournal = openJournal(journalSequence + 1);
+                    journal.close();
+                    journal = newJournal;
+                    lastClosedSequence = journalSequence++;
+                } catch (IOException e) {
+                    ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Rotate file saves journal");
+                    failedFlushes++;
+                    return false;
+                }
+                flushing = pending;
+                pending = new LinkedHashMap<>();
+                saves = flushing.values();
+            }
+
+            try {
+                List<PendingSave> rejected = write(saves);
+                List<PendingSave> dropped = new ArrayList<>();
+                boolean rejectedArePending = retryLater(rejected, dropped);
+                for (PendingSave save : dropped) {
+                    report(save, "Saved file was rejected by database " + MAX_WRITE_ATTEMPTS + " times");
+                }
+                for (File segment : getJournalSegments()) {
+                    if (getSequence(segment) <= lastClosedSequence && !segment.delete()) {
+                        ErrorWriter.ERROR_WRITER.writeInfo("Can't delete journal " + segment.getAbsolutePath());
+                    }
+                }
+                return !rejectedArePending;
+            } catch (Throwable e) {
+                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Write " + saves.size() + " saved files");
+                synchronized (this) {
+                    failedFlushes++;
+                    Map<String, PendingSave> notWritten = new LinkedHashMap<>(flushing);
+                    notWritten.putAll(pending);
+                    pending = notWritten;
+                }
+                return false;
+            } finally {
+                synchronized (this) {
+                    flushing = Collections.emptyMap();
+                }
+            }
+        }
+    }
+
+    /**
+     * Rejected saves go back to pending and to the current journal unless the file was saved again,
+     * or they are dropped after {@link #MAX_WRITE_ATTEMPTS}.
+     *
+     * @param dropped receives dropped saves
+     * @return true if some of rejected saves are pending
+     */
+    private synchronized boolean retryLater(List<PendingSave> rejected, List<PendingSave> dropped) throws IOException {
+        boolean result = false;
+        for (PendingSave save : rejected) {
+            rejectedSaves++;
+            if (++save.writeAttempts >= MAX_WRITE_ATTEMPTS) {
+                droppedSaves++;
+                dropped.add(save);
+            } else if (!pending.containsKey(save.fileId)) {
+                journal.write(ByteBuffer.wrap(save.toBytes()));
+                pending.put(save.fileId, save);
+                result = true;
+            }
+        }
+        journal.force(false);
+        return result;
+    }
+
+    private static void report(PendingSave save, String reason) {
+        ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(
+                reason + ": user_id " + save.ownerId + ", fileId " + save.fileId,
+                SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown",
+                Collections.singletonMap(save.fileId, save.content == null ? "" : save.content));
+    }
+
+    /**
+     * Files are updated only if they still belong to the user who saved them, saves of deleted files are dropped.
+     * One rejected save fails the whole batch, then saves are written one by one.
+     *
+     * @return saves rejected by database
+     * @throws SQLException if database is unavailable
+     */
+    private List<PendingSave> write(Collection<PendingSave> saves) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            try {
+                reportNotUpdated(writeBatch(connection, saves));
+                return Collections.emptyList();
+            } catch (SQLException e) {
+                if (isDatabaseUnavailable(e)) {
+                    throw e;
+                }
+                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Write " + saves.size() + " saved files in one batch");
+            }
+
+            List<PendingSave> rejected = new ArrayList<>();
+            for (PendingSave save : saves) {
+                try {
+                    reportNotUpdated(writeBatch(connection, Collections.singletonList(save)));
+                } catch (SQLException e) {
+                    if (isDatabaseUnavailable(e)) {
+                        throw e;
+                    }
+                    ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Write saved file " + save.fileId);
+                    rejected.add(save);
+                }
+            }
+            return rejected;
+        }
+    }
+
+    /**
+     * @return saves which updated nothing
+     */
+    private static List<PendingSave> writeBatch(Connection connection, Collection<PendingSave> saves) throws SQLException {
+        List<PendingSave> notUpdated = new ArrayList<>();
+        connection.setAutoCommit(false);
+        try (PreparedStatement st = connection.prepareStatement("UPDATE files JOIN " +
+                "projects ON files.project_id = projects.id SET" +
+                " files.content = ? WHERE" +
+                " projects.owner_id = ? AND files.public_id = ?")) {
+            List<PendingSave> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            for (PendingSave save : saves) {
+                st.setString(1, save.content);
+                st.setInt(2, save.ownerId);
+                st.setString(3, save.fileId);
+                st.addBatch();
+                batch.add(save);
+                if (batch.size() == MAX_BATCH_SIZE) {
+                    checkUpdated(batch, st.executeBatch(), notUpdated);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                checkUpdated(batch, st.executeBatch(), notUpdated);
+            }
+            connection.commit();
+        } catch (Throwable e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        return notUpdated;
+    }
+
+    private static void checkUpdated(List<PendingSave> batch, int[] updateCounts, List<PendingSave> notUpdated) throws SQLException {
+        for (int i = 0; i < updateCounts.length && i < batch.size(); i++) {
+            if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                throw new SQLException("Update of saved file " + batch.get(i).fileId + " failed");
+            }
+            //Driver may report Statement.SUCCESS_NO_INFO for rewritten batches, such saves are not checked
+            if (updateCounts[i] == 0) {
+                notUpdated.add(batch.get(i));
+            }
+        }
+    }
+
+    /**
+     * Save is acknowledged only for files owned by the user, so a save that updates nothing means the file
+     * was deleted or moved to another owner after that. Such saves are lost.
+     */
+    private void reportNotUpdated(List<PendingSave> notUpdated) {
+        synchronized (this) {
+            droppedSaves += notUpdated.size();
+        }
+        for (PendingSave save : notUpdated) {
+            report(save, "Saved file was not written, 0 files were updated");
+        }
+    }
+
+    /**
+     * Saves are kept and retried without counting attempts if the failure is not caused by their data.
+     */
+    private static boolean isDatabaseUnavailable(SQLException e) {
+        return e instanceof SQLTransientException ||
+                e instanceof SQLRecoverableException ||
+                e instanceof SQLNonTransientConnectionException;
+    }
+
+    private FileChannel openJournal(long sequence) throws IOException {
+        File file = new File(journalDirectory, JOURNAL_PREFIX + sequence + JOURNAL_SUFFIX);
+        return new FileOutputStream(file, true).getChannel();
+    }
+
+    private List<File> getJournalSegments() {
+        File[] files = journalDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_SUFFIX);
+            }
+        });
+        List<File> segments = new ArrayList<>();
+        if (files != null) {
+            segments.addAll(Arrays.asList(files));
+        }
+        Collections.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(getSequence(o1), getSequence(o2));
+            }
+        });
+        return segments;
+    }
+
+    private static long getSequence(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length()));
+    }
+
+    /**
+     * Incomplete last record is ignored, it was written during a crash and never acknowledged.
+     */
+    private void readJournal(File segment) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            while (true) {
+                PendingSave save;
+                try {
+                    save = PendingSave.read(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                pending.remove(save.fileId);
+                pending.put(save.fileId, save);
+            }
+        }
+    }
+
+    private static class PendingSave {
+        private final int ownerId;
+        private final String fileId;
+        private final String content;
+        private int writeAttempts = 0;
+
+        private PendingSave(int ownerId, String fileId, String content) {
+            this.ownerId = ownerId;
+            this.fileId = fileId;
+            this.content = content;
+        }
+
+        private byte[] toBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(ownerId);
+            out.writeUTF(fileId);
+            if (content == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] contentBytes = content.getBytes(UTF_8);
+                out.writeInt(contentBytes.length);
+                out.write(contentBytes);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static PendingSave read(DataInputStream in) throws IOException {
+            int ownerId = in.readInt();
+            String fileId = in.readUTF();
+            int length = in.readInt();
+            String content = null;
+            if (length >= 0) {
+                byte[] contentBytes = new byte[length];
+                in.readFully(contentBytes);
+                content = new String(contentBytes, UTF_8);
+            }
+            return new PendingSave(ownerId, fileId, content);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.naming.NamingContext;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.webdemo.ApplicationSettings;
 import org.jetbrains.webdemo.ErrorWriter;
 import org.jetbrains.webdemo.Project;
 import org.jetbrains.webdemo.ProjectFile;
@@ -39,15 +40,36 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MySqlConnector {
     private static final MySqlConnector connector = new MySqlConnector();
+    private static final int MAX_ID_ATTEMPTS = 3;
+    private static final long PROJECT_HEADERS_CACHE_TTL = 30 * 1000;
+    private static final int PROJECT_HEADERS_CACHE_SIZE = 1000;
+    private static final int FILE_OWNERS_CACHE_SIZE = 10000;
     private DataSource dataSource;
     private String databaseUrl;
     private ObjectMapper objectMapper = new ObjectMapper();
     private IdentifierGenerator idGenerator = new IdentifierGenerator();
+    private final ProjectsCache projectsCache = new ProjectsCache();
+    private final ConcurrentHashMap<Integer, ProjectHeaders> projectHeadersCache = new ConcurrentHashMap<>();
+    private FileSaveBuffer fileSaveBuffer;
+    //Owners of recently saved and added files, buffered saves are checked against it instead of updating database
+    private final Map<String, Integer> fileOwners = Collections.synchronizedMap(
+            new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > FILE_OWNERS_CACHE_SIZE;
+                }
+            });
 
     private MySqlConnector() {
         try {
@@ -61,20 +83,46 @@ public class MySqlConnector {
         } catch (Throwable e) {
             ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", databaseUrl);
         }
+        if (ApplicationSettings.FILE_SAVE_DELAY > 0) {
+            try {
+                FileSaveBuffer buffer = new FileSaveBuffer(dataSource);
+                buffer.start();
+                fileSaveBuffer = buffer;
+            } catch (Throwable e) {
+                //Files are saved directly to database
+                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Start file saves buffer");
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (fileSaveBuffer != null) {
+            fileSaveBuffer.stop();
+        }
     }
 
     public static MySqlConnector getInstance() {
         return connector;
     }
 
+    /**
+     * Adds user if it is new and stores its database id in userInfo, so later requests of the session don't look it up.
+     */
     public void addNewUser(UserInfo userInfo) throws DatabaseOperationException {
         try (Connection connection = dataSource.getConnection();
-             PreparedStatement st = connection.prepareStatement("INSERT INTO users (client_id, provider, username) VALUES (?, ?, ?)")) {
-            if (findUser(userInfo)) return;
+             PreparedStatement st = connection.prepareStatement(
+                     "INSERT INTO users (client_id, provider, username) VALUES (?, ?, ?) " +
+                             "ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)",
+                     Statement.RETURN_GENERATED_KEYS)) {
             st.setString(1, userInfo.getId());
             st.setString(2, userInfo.getType());
             st.setString(3, userInfo.getName());
             st.executeUpdate();
+            try (ResultSet rs = st.getGeneratedKeys()) {
+                if (rs.next()) {
+                    userInfo.setDatabaseId(rs.getInt(1));
+                }
+            }
         } catch (SQLException e) {
             throw new DatabaseOperationException(
                     "Can't add user with id:" + userInfo.getId() + " type:" + userInfo.getType() + " name:" + userInfo.getName(),
@@ -93,28 +141,38 @@ public class MySqlConnector {
         }
     }
 
-    private boolean findUser(UserInfo userInfo) throws SQLException {
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement st = connection.prepareStatement("SELECT users.id FROM users WHERE (users.client_id = ? AND users.provider=?)")) {
-            st.setString(1, userInfo.getId());
-            st.setString(2, userInfo.getType());
-            try (ResultSet rs = st.executeQuery()) {
-                return rs.next();
+    /**
+     * If save buffer is enabled, file is written to database later. Ownership is checked before the save
+     * is acknowledged, files deleted after that are not updated.
+     */
+    public void saveFile(UserInfo userInfo, ProjectFile file) throws DatabaseOperationException {
+        if (fileSaveBuffer != null) {
+            int userId = getUserId(userInfo);
+            if (!isFileOwner(userId, file.getPublicId())) {
+                DatabaseOperationException e = new DatabaseOperationException("0 files were updated");
+                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
+                        SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(),
+                        "unknown",
+                        "user_id " + userInfo.getId() + ", client_type " + userInfo.getType() + ", fileId " + file.getPublicId());
+                throw e;
+            }
+            try {
+                fileSaveBuffer.save(userId, file.getPublicId(), file.getText());
+            } catch (IOException e) {
+                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Save file " + userInfo.getId() + " " + userInfo.getType() + " " + userInfo.getName() + " " + file.getPublicId());
+                throw new DatabaseOperationException("Unknown exception", e);
             }
+            projectsCache.invalidateFile(file.getPublicId());
+            return;
         }
-    }
-
-    public void saveFile(UserInfo userInfo, ProjectFile file) throws DatabaseOperationException {
         try (Connection connection = dataSource.getConnection();
              PreparedStatement st = connection.prepareStatement("UPDATE files JOIN " +
-                "projects ON files.project_id = projects.id JOIN " +
-                "users ON projects.owner_id = users.id SET" +
+                "projects ON files.project_id = projects.id SET" +
                 " files.content = ? WHERE" +
-                " users.client_id = ? AND users.provider = ? AND files.public_id = ?  ")) {
+                " projects.owner_id = ? AND files.public_id = ?  ")) {
             st.setString(1, file.getText());
-            st.setString(2, userInfo.getId());
-            st.setString(3, userInfo.getType());
-            st.setString(4, file.getPublicId());
+            st.setInt(2, getUserId(userInfo));
+            st.setString(3, file.getPublicId());
             int rowsUpdated = st.executeUpdate();
             if (rowsUpdated != 1) {
                 DatabaseOperationException e = new DatabaseOperationException(rowsUpdated + " files were updated");
@@ -132,6 +190,40 @@ public class MySqlConnector {
                 throw new DatabaseOperationException("Unknown exception", e);
             }
         }
+        projectsCache.invalidateFile(file.getPublicId());
+    }
+
+    private boolean isFileOwner(int userId, String publicId) throws DatabaseOperationException {
+        Integer ownerId = fileOwners.get(publicId);
+        if (ownerId == null) {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement st = connection.prepareStatement("SELECT projects.owner_id FROM files JOIN " +
+                         "projects ON files.project_id = projects.id WHERE files.public_id = ?")) {
+                st.setString(1, publicId);
+                try (ResultSet rs = st.executeQuery()) {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    ownerId = rs.getInt("owner_id");
+                }
+            } catch (SQLException e) {
+                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Find owner of file " + publicId);
+                throw new DatabaseOperationException("Unknown exception", e);
+            }
+            fileOwners.put(publicId, ownerId);
+        }
+        return ownerId == userId;
+    }
+
+    private void forgetFileOwners(int userId) {
+        synchronized (fileOwners) {
+            Iterator<Integer> iterator = fileOwners.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() == userId) {
+                    iterator.remove();
+                }
+            }
+        }
     }
 
     private String escape(String str) {
@@ -148,10 +240,8 @@ public class MySqlConnector {
         try (Connection connection = dataSource.getConnection()) {
             st = connection.prepareStatement("SELECT count(*) FROM files " +
                     "JOIN projects ON projects.id = files.project_id " +
-                    "JOIN users ON users.id = projects.owner_id " +
-                    "WHERE (users.client_id=? AND users.provider=?)");
-            st.setString(1, userInfo.getId());
-            st.setString(2, userInfo.getType());
+                    "WHERE projects.owner_id = ?");
+            st.setInt(1, getUserId(userInfo));
             rs = st.executeQuery();
             if (!rs.next()) {
                 return false;
@@ -172,11 +262,8 @@ public class MySqlConnector {
         PreparedStatement st = null;
         ResultSet rs = null;
         try (Connection connection = dataSource.getConnection()) {
-            st = connection.prepareStatement("SELECT count(*) FROM projects " +
-                    "JOIN users ON users.id = projects.owner_id " +
-                    "WHERE (users.client_id=? AND users.provider=?)");
-            st.setString(1, userInfo.getId());
-            st.setString(2, userInfo.getType());
+            st = connection.prepareStatement("SELECT count(*) FROM projects WHERE projects.owner_id = ?");
+            st.setInt(1, getUserId(userInfo));
             rs = st.executeQuery();
             if (!rs.next()) {
                 return false;
@@ -223,17 +310,20 @@ public class MySqlConnector {
                 throw new DatabaseOperationException("Unknown exception", e);
             }
         }
+        projectsCache.invalidateProject(publicId);
     }
 
 
     public String addProject(UserInfo userInfo, String name) throws DatabaseOperationException {
         try {
-            String projectId = addProject(userInfo, new Project(name, "", "java"));
-            String fileId = addFileToProject(userInfo, projectId, name, "fun main(args: Array<String>) {\n\n}");
+            Project project = new Project(name, "", "java");
+            project.files.add(new ProjectFile(name, "fun main(args: Array<String>) {\n\n}", true, null, ProjectFile.Type.KOTLIN_FILE));
+            List<String> fileIds = new ArrayList<>();
+            String projectId = addProject(userInfo, project, fileIds);
 
             ObjectNode response = new ObjectNode(JsonNodeFactory.instance);
             response.put("projectId", projectId);
-            response.put("fileId", fileId);
+            response.put("fileId", fileIds.get(0));
             return objectMapper.writeValueAsString(response);
         } catch (IOException e) {
             throw new DatabaseOperationException("IO exception");
@@ -241,51 +331,124 @@ public class MySqlConnector {
     }
 
     public String addProject(UserInfo userInfo, Project project) throws DatabaseOperationException {
-        if (!checkCountOfProjects(userInfo)) {
-            throw new DatabaseOperationException("You can't save more than 100 projects");
-        }
-        int userId = getUserId(userInfo);
-        PreparedStatement st = null;
-        try (Connection connection = dataSource.getConnection()) {
-            String publicId = idGenerator.nextProjectId();
+        return addProject(userInfo, project, new ArrayList<String>());
+    }
 
-            st = connection.prepareStatement("INSERT INTO projects (owner_id, name, args, run_configuration, origin, public_id, read_only_files) VALUES (?,?,?,?,?,?,?) ");
-            st.setString(1, userId + "");
-            st.setString(2, escape(project.name));
-            st.setString(3, project.args);
-            st.setString(4, project.confType);
-            st.setString(5, project.originUrl);
-            st.setString(6, publicId);
-            st.setString(7, objectMapper.writeValueAsString(project.readOnlyFileNames));
-            st.execute();
+    /**
+     * Project and all its files are inserted in one transaction. Both project and file limits
+     * are checked by the project insert itself, files are sent in one batch. Row of the owner is locked first,
+     * so concurrent inserts of the same user are serialized and can't both pass the limits.
+     * Public ids are not checked in advance, the whole transaction is repeated with new ids if the unique key
+     * rejects one of them.
+     *
+     * @param fileIds receives public ids of inserted files in order of project files
+     */
+    private String addProject(UserInfo userInfo, Project project, List<String> fileIds) throws DatabaseOperationException {
+        int userId = getUserId(userInfo);
+        for (int attempt = 1; ; attempt++) {
+            boolean projectInserted = false;
+            fileIds.clear();
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try (PreparedStatement ownerSt = connection.prepareStatement(
+                        "SELECT users.id FROM users WHERE users.id = ? FOR UPDATE");
+                     PreparedStatement projectSt = connection.prepareStatement(
+                        "INSERT INTO projects (owner_id, name, args, run_configuration, origin, public_id, read_only_files) " +
+                                "SELECT ?, ?, ?, ?, ?, ?, ? FROM DUAL " +
+                                "WHERE (SELECT count(*) FROM projects WHERE projects.owner_id = ?) < 100 " +
+                                "AND (SELECT count(*) FROM files JOIN projects ON projects.id = files.project_id " +
+                                "WHERE projects.owner_id = ?) + ? <= 100",
+                        Statement.RETURN_GENERATED_KEYS);
+                     PreparedStatement filesSt = connection.prepareStatement(
+                             "INSERT INTO files (project_id, public_id, name, content) VALUES (?,?,?,?)")) {
+                    ownerSt.setInt(1, userId);
+                    ownerSt.executeQuery().close();
+
+                    String publicId = idGenerator.nextProjectId();
+                    projectSt.setInt(1, userId);
+                    projectSt.setString(2, escape(project.name));
+                    projectSt.setString(3, project.args);
+                    projectSt.setString(4, project.confType);
+                    projectSt.setString(5, project.originUrl);
+                    projectSt.setString(6, publicId);
+                    projectSt.setString(7, objectMapper.writeValueAsString(project.readOnlyFileNames));
+                    projectSt.setInt(8, userId);
+                    projectSt.setInt(9, userId);
+                    projectSt.setInt(10, project.files.size());
+                    if (projectSt.executeUpdate() != 1) {
+                        connection.rollback();
+                        if (!checkCountOfProjects(userInfo)) {
+                            throw new DatabaseOperationException("You can't save more than 100 projects");
+                        } else {
+                            throw new DatabaseOperationException("You can't save more than 100 files");
+                        }
+                    }
+                    projectInserted = true;
 
-            int projectId = getProjectId(userInfo, publicId);
-            for (ProjectFile file : project.files) {
-                addFileToProject(userInfo, projectId, file.getName(), file.getText());
-            }
+                    int projectId;
+                    try (ResultSet rs = projectSt.getGeneratedKeys()) {
+                        rs.next();
+                        projectId = rs.getInt(1);
+                    }
+                    for (ProjectFile file : project.files) {
+                        String fileName = file.getName();
+                        String fileId = idGenerator.nextFileId();
+                        filesSt.setInt(1, projectId);
+                        filesSt.setString(2, fileId);
+                        filesSt.setString(3, escape(fileName.endsWith(".kt") ? fileName : fileName + ".kt"));
+                        filesSt.setString(4, file.getText());
+                        filesSt.addBatch();
+                        fileIds.add(fileId);
+                    }
+                    if (!project.files.isEmpty()) {
+                        filesSt.executeBatch();
+                    }
 
-            return publicId;
-        } catch (SQLException e) {
-            if (e.getErrorCode() == 1062) {
-                throw new DatabaseOperationException("Project with this name already exist", e);
-            } else {
+                    connection.commit();
+                    projectHeadersCache.remove(userId);
+                    for (String fileId : fileIds) {
+                        fileOwners.put(fileId, userId);
+                    }
+                    return publicId;
+                } catch (Throwable e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (DatabaseOperationException e) {
+                throw e;
+            } catch (SQLException e) {
+                if (isPublicIdCollision(e) && attempt < MAX_ID_ATTEMPTS) {
+                    continue;
+                }
+                if (e.getErrorCode() == 1062) {
+                    if (projectInserted) {
+                        throw new DatabaseOperationException("File with this name already exist in this project", e);
+                    } else {
+                        throw new DatabaseOperationException("Project with this name already exist", e);
+                    }
+                } else {
+                    ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Add project " + userInfo.getId() + " " + userInfo.getType() + " " + userInfo.getName() + " " + project.name);
+                    throw new DatabaseOperationException("Unknown exception", e);
+                }
+            } catch (Throwable e) {
                 ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Add project " + userInfo.getId() + " " + userInfo.getType() + " " + userInfo.getName() + " " + project.name);
                 throw new DatabaseOperationException("Unknown exception", e);
             }
-        } catch (Throwable e) {
-            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Add project " + userInfo.getId() + " " + userInfo.getType() + " " + userInfo.getName() + " " + project.name);
-            throw new DatabaseOperationException("Unknown exception", e);
-        } finally {
-            closeStatement(st);
         }
     }
 
     public String addFileToProject(UserInfo userInfo, String projectPublicId, String fileName) throws DatabaseOperationException {
-        return addFileToProject(userInfo, getProjectId(userInfo, projectPublicId), fileName, "");
+        String fileId = addFileToProject(userInfo, getProjectId(userInfo, projectPublicId), fileName, "");
+        projectsCache.invalidateProject(projectPublicId);
+        return fileId;
     }
 
     public String addFileToProject(UserInfo userInfo, String projectPublicId, String fileName, String content) throws DatabaseOperationException {
-        return addFileToProject(userInfo, getProjectId(userInfo, projectPublicId), fileName, content);
+        String fileId = addFileToProject(userInfo, getProjectId(userInfo, projectPublicId), fileName, content);
+        projectsCache.invalidateProject(projectPublicId);
+        return fileId;
     }
 
     private String addFileToProject(UserInfo userInfo, int projectId, String fileName, String content) throws DatabaseOperationException {
@@ -293,41 +456,52 @@ public class MySqlConnector {
             throw new DatabaseOperationException("You can't save more than 100 files");
         }
         fileName = escape(fileName.endsWith(".kt") ? fileName : fileName + ".kt");
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement st = connection.prepareStatement("INSERT INTO files (project_id, public_id, name, content) VALUES (?,?,?,?) ")) {
-            String publicId = idGenerator.nextFileId();
-
-            st.setString(1, projectId + "");
-            st.setString(2, publicId);
-            st.setString(3, fileName);
-            st.setString(4, content);
-            st.execute();
-
-            return publicId;
-        } catch (SQLException e) {
-            if (e.getErrorCode() == 1062) {
-                throw new DatabaseOperationException("File with this name already exist in this project", e);
-            } else {
+        for (int attempt = 1; ; attempt++) {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement st = connection.prepareStatement("INSERT INTO files (project_id, public_id, name, content) VALUES (?,?,?,?) ")) {
+                String publicId = idGenerator.nextFileId();
+
+                st.setString(1, projectId + "");
+                st.setString(2, publicId);
+                st.setString(3, fileName);
+                st.setString(4, content);
+                st.execute();
+
+                fileOwners.put(publicId, getUserId(userInfo));
+                return publicId;
+            } catch (SQLException e) {
+                if (isPublicIdCollision(e) && attempt < MAX_ID_ATTEMPTS) {
+                    continue;
+                }
+                if (e.getErrorCode() == 1062) {
+                    throw new DatabaseOperationException("File with this name already exist in this project", e);
+                } else {
+                    ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Add file " + userInfo.getId() + " " + userInfo.getType() + " " + userInfo.getName() + " " + projectId + " " + fileName);
+                    throw new DatabaseOperationException("Unknown exception", e);
+                }
+            } catch (Throwable e) {
                 ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Add file " + userInfo.getId() + " " + userInfo.getType() + " " + userInfo.getName() + " " + projectId + " " + fileName);
                 throw new DatabaseOperationException("Unknown exception", e);
             }
-        } catch (Throwable e) {
-            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Add file " + userInfo.getId() + " " + userInfo.getType() + " " + userInfo.getName() + " " + projectId + " " + fileName);
-            throw new DatabaseOperationException("Unknown exception", e);
         }
     }
 
+    /**
+     * List is cached for a short time, adding, renaming and deleting a project drops the cached list.
+     */
     public ArrayNode getProjectHeaders(UserInfo userInfo) throws DatabaseOperationException {
+        int userId = getUserId(userInfo);
+        ProjectHeaders cachedHeaders = projectHeadersCache.get(userId);
+        if (cachedHeaders != null && cachedHeaders.expirationTime > System.currentTimeMillis()) {
+            return cachedHeaders.headers.deepCopy();
+        }
         PreparedStatement st = null;
         ResultSet rs = null;
         try (Connection connection = dataSource.getConnection()) {
             st = connection.prepareStatement(
-                    "SELECT projects.public_id, projects.name FROM projects JOIN " +
-                            "users ON projects.owner_id = users.id WHERE " +
-                            "(users.client_id = ? AND users.provider = ?)"
+                    "SELECT projects.public_id, projects.name FROM projects WHERE projects.owner_id = ?"
             );
-            st.setString(1, userInfo.getId());
-            st.setString(2, userInfo.getType());
+            st.setInt(1, userId);
 
             rs = st.executeQuery();
 
@@ -339,6 +513,7 @@ public class MySqlConnector {
                 projects.add(object);
             }
 
+            cacheProjectHeaders(userId, projects.deepCopy());
             return projects;
         } catch (Throwable e) {
             ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
@@ -352,6 +527,59 @@ public class MySqlConnector {
 
 
     public String getProjectContent(String id) throws DatabaseOperationException {
+        String cachedContent = projectsCache.get(id);
+        if (cachedContent != null) {
+            return cachedContent;
+        }
+        long cacheGeneration = projectsCache.getGeneration();
+        try {
+            List<String> fileIds = new ArrayList<>();
+            String content = loadProjectContent(id, fileIds);
+            if (content != null && hasPendingSaves(fileIds)) {
+                //Some files of the project are not written to database yet
+                flushSaves(fileIds);
+                fileIds.clear();
+                content = loadProjectContent(id, fileIds);
+            }
+            if (content != null) {
+                projectsCache.put(id, content, fileIds, cacheGeneration);
+            }
+            return content;
+        } catch (DatabaseOperationException e) {
+            return ResponseUtils.getErrorInJson(e.getMessage());
+        } catch (Throwable e) {
+            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", id);
+            return ResponseUtils.getErrorInJson("Unknown error while loading your project");
+        }
+    }
+
+    /**
+     * Content of the files in database is stale while their saves are pending, so it is not returned.
+     */
+    private void flushSaves(List<String> fileIds) throws DatabaseOperationException {
+        if (!fileSaveBuffer.flush() && hasPendingSaves(fileIds)) {
+            throw new DatabaseOperationException("Your saved files are not written yet, please try again later");
+        }
+    }
+
+    private boolean hasPendingSaves(List<String> fileIds) {
+        if (fileSaveBuffer == null) {
+            return false;
+        }
+        for (String fileId : fileIds) {
+            if (fileSaveBuffer.isPending(fileId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param fileIds receives public ids of the project files
+     * @return project in JSON or null if there is no such project
+     */
+    @Nullable
+    private String loadProjectContent(String id, List<String> fileIds) throws SQLException, IOException {
         PreparedStatement st = null;
         ResultSet rs = null;
         try (Connection connection = dataSource.getConnection()) {
@@ -383,19 +611,25 @@ public class MySqlConnector {
                 while (rs.next()) {
                     ProjectFile file = new ProjectFile(unEscape(rs.getString("name")), rs.getString("content"), true, rs.getString("public_id"), ProjectFile.Type.KOTLIN_FILE);
                     project.files.add(file);
+                    fileIds.add(file.getPublicId());
                 }
                 return objectMapper.writeValueAsString(project);
             } else {
                 return null;
             }
-        } catch (Throwable e) {
-            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", id);
-            return ResponseUtils.getErrorInJson("Unknown error while loading your project");
         } finally {
             closeStatementAndResultSet(st, rs);
         }
     }
 
+    public Map<String, Long> getProjectsCacheStatistics() {
+        return projectsCache.getStatistics();
+    }
+
+    public Map<String, Long> getFileSavesStatistics() {
+        return fileSaveBuffer != null ? fileSaveBuffer.getStatistics() : Collections.<String, Long>emptyMap();
+    }
+
     public boolean isProjectExists(String publicId) throws DatabaseOperationException {
         PreparedStatement st = null;
         ResultSet rs = null;
@@ -435,13 +669,11 @@ public class MySqlConnector {
         try (
                 Connection connection = dataSource.getConnection();
                 PreparedStatement st = connection.prepareStatement("DELETE files.* FROM files JOIN" +
-                " projects ON files.project_id = projects.id JOIN " +
-                " users ON projects.owner_id = users.id WHERE " +
-                        " users.client_id = ? AND users.provider  = ? AND files.public_id = ?")
+                " projects ON files.project_id = projects.id WHERE " +
+                        " projects.owner_id = ? AND files.public_id = ?")
         ) {
-            st.setString(1, userInfo.getId());
-            st.setString(2, userInfo.getType());
-            st.setString(3, publicId);
+            st.setInt(1, getUserId(userInfo));
+            st.setString(2, publicId);
             int rowsDeleted = st.executeUpdate();
             if (rowsDeleted != 1) {
                 DatabaseOperationException e = new DatabaseOperationException(rowsDeleted + " files were deleted");
@@ -455,6 +687,8 @@ public class MySqlConnector {
             ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", userInfo.getId() + " " + userInfo.getType() + " " + userInfo.getName() + " " + publicId);
             throw new DatabaseOperationException("Unknown exception ", e);
         }
+        fileOwners.remove(publicId);
+        projectsCache.invalidateFile(publicId);
 
     }
 
@@ -463,11 +697,9 @@ public class MySqlConnector {
         ResultSet rs = null;
         try (Connection connection = dataSource.getConnection()) {
             st = connection.prepareStatement("SELECT read_only_files FROM projects " +
-                    "JOIN users ON users.id = projects.owner_id " +
-                    "WHERE users.client_id = ? AND users.provider = ? AND projects.public_id = ?");
-            st.setString(1, userInfo.getId());
-            st.setString(2, userInfo.getType());
-            st.setString(3, projectId);
+                    "WHERE projects.owner_id = ? AND projects.public_id = ?");
+            st.setInt(1, getUserId(userInfo));
+            st.setString(2, projectId);
             rs = st.executeQuery();
             if (rs.next()) {
                 List<String> readOnlyFileNames = objectMapper.readValue(rs.getString("read_only_files"), List.class);
@@ -504,6 +736,7 @@ public class MySqlConnector {
         } finally {
             closeStatementAndResultSet(st, rs);
         }
+        projectsCache.invalidateProject(projectId);
 
     }
 
@@ -512,15 +745,13 @@ public class MySqlConnector {
         try (
                 Connection connection = dataSource.getConnection();
                 PreparedStatement st = connection.prepareStatement("UPDATE files JOIN " +
-                "projects ON files.project_id = projects.id JOIN " +
-                "users ON projects.owner_id = users.id SET " +
+                "projects ON files.project_id = projects.id SET " +
                 "files.name = ? WHERE " +
-                        "users.client_id = ? AND  users.provider = ? AND files.public_id = ?")
+                        "projects.owner_id = ? AND files.public_id = ?")
         ) {
             st.setString(1, escape(newName));
-            st.setString(2, userInfo.getId());
-            st.setString(3, userInfo.getType());
-            st.setString(4, publicId);
+            st.setInt(2, getUserId(userInfo));
+            st.setString(3, publicId);
             int rowsUpdated = st.executeUpdate();
             if (rowsUpdated != 1) {
                 DatabaseOperationException e = new DatabaseOperationException(rowsUpdated + " files were updated");
@@ -538,6 +769,7 @@ public class MySqlConnector {
                 throw new DatabaseOperationException("Unknown exception", e);
             }
         }
+        projectsCache.invalidateFile(publicId);
     }
 
 
@@ -562,6 +794,10 @@ public class MySqlConnector {
             ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Delete project " + userInfo.getId() + " " + userInfo.getType() + " " + userInfo.getName() + " " + publicId);
             throw new DatabaseOperationException("Unknown exception");
         }
+        projectHeadersCache.remove(userId);
+        //Ids of the deleted files are unknown, saves of other files of the user are checked again
+        forgetFileOwners(userId);
+        projectsCache.invalidateProject(publicId);
 
     }
 
@@ -594,9 +830,14 @@ public class MySqlConnector {
             ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, SessionInfo.TypeOfRequest.WORK_WITH_DATABASE.name(), "unknown", "Rename project " + userInfo.getId() + " " + userInfo.getType() + " " + userInfo.getName() + " " + publicId + " ");
             throw new DatabaseOperationException("Unknown exception", e);
         }
+        projectHeadersCache.remove(userId);
+        projectsCache.invalidateProject(publicId);
     }
 
     private int getUserId(UserInfo userInfo) throws DatabaseOperationException {
+        if (userInfo.getDatabaseId() != 0) {
+            return userInfo.getDatabaseId();
+        }
         try (
                 Connection connection = dataSource.getConnection();
                 PreparedStatement st = connection.prepareStatement("SELECT users.id FROM users WHERE (users.client_id = ? AND users.provider=?)")
@@ -605,7 +846,8 @@ public class MySqlConnector {
             st.setString(2, userInfo.getType());
             try (ResultSet rs = st.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getInt("id");
+                    userInfo.setDatabaseId(rs.getInt("id"));
+                    return userInfo.getDatabaseId();
                 } else {
                     throw new DatabaseOperationException("User with id" + userInfo.getId() + " don't exist");
                 }
@@ -622,13 +864,11 @@ public class MySqlConnector {
         try (
                 Connection connection = dataSource.getConnection();
                 PreparedStatement st = connection.prepareStatement(
-                "SELECT projects.id FROM projects JOIN " +
-                        "users ON projects.owner_id =users.id WHERE " +
-                        "( users.client_id = ? AND  users.provider = ? AND projects.public_id = ?)")
+                "SELECT projects.id FROM projects WHERE " +
+                        "projects.owner_id = ? AND projects.public_id = ?")
         ) {
-            st.setString(1, userInfo.getId());
-            st.setString(2, userInfo.getType());
-            st.setString(3, publicId);
+            st.setInt(1, getUserId(userInfo));
+            st.setString(2, publicId);
             try (ResultSet rs = st.executeQuery()) {
                 if (rs.next()) {
                     return rs.getInt("id");
@@ -668,7 +908,23 @@ public class MySqlConnector {
     }
 
 
+    private void cacheProjectHeaders(int userId, ArrayNode headers) {
+        long now = System.currentTimeMillis();
+        if (projectHeadersCache.size() >= PROJECT_HEADERS_CACHE_SIZE) {
+            Iterator<ProjectHeaders> iterator = projectHeadersCache.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().expirationTime <= now) {
+                    iterator.remove();
+                }
+            }
+        }
+        projectHeadersCache.put(userId, new ProjectHeaders(headers, now + PROJECT_HEADERS_CACHE_TTL));
+    }
+
     public ProjectFile getFile(String publicId) throws DatabaseOperationException {
+        if (fileSaveBuffer != null && fileSaveBuffer.isPending(publicId)) {
+            flushSaves(Collections.singletonList(publicId));
+        }
         PreparedStatement st = null;
         ResultSet rs = null;
         try (Connection connection = dataSource.getConnection()) {
@@ -691,51 +947,50 @@ public class MySqlConnector {
         }
     }
 
-    private final class IdentifierGenerator {
+    private static class ProjectHeaders {
+        private final ArrayNode headers;
+        private final long expirationTime;
+
+        private ProjectHeaders(ArrayNode headers, long expirationTime) {
+            this.headers = headers;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    private static boolean isPublicIdCollision(SQLException e) {
+        return e.getErrorCode() == 1062 && e.getMessage() != null && e.getMessage().contains("public_id'");
+    }
+
+    /**
+     * Ids start with creation time, so new rows are appended to the end of public_id index, and end with
+     * 80 random bits, so ids are not guessable and practically never collide. Uniqueness is left to the unique key.
+     */
+    private static final class IdentifierGenerator {
+        private static final int TIME_LENGTH = 10;
+        private static final int RANDOM_BITS = 80;
         private SecureRandom random = new SecureRandom();
 
         private String nextId() {
-            return new BigInteger(130, random).toString(32);
-        }
-
-        public String nextProjectId() throws SQLException {
-            while (true) {
-                String id = nextId();
-                PreparedStatement st = null;
-                ResultSet rs = null;
-                try (Connection connection = dataSource.getConnection()) {
-                    st = connection.prepareStatement(
-                            "SELECT COUNT(projects.public_id) FROM projects WHERE public_id = ?"
-                    );
-                    st.setString(1, id);
-                    rs = st.executeQuery();
-                    rs.next();
-                    int numberOfRows = rs.getInt(1);
-                    if (numberOfRows == 0) return id;
-                } finally {
-                    closeStatementAndResultSet(st, rs);
-                }
+            String time = Long.toString(System.currentTimeMillis(), 32);
+            String randomPart = new BigInteger(RANDOM_BITS, random).toString(32);
+            StringBuilder id = new StringBuilder(TIME_LENGTH + RANDOM_BITS / 5);
+            for (int i = time.length(); i < TIME_LENGTH; i++) {
+                id.append('0');
             }
+            id.append(time);
+            for (int i = randomPart.length(); i < RANDOM_BITS / 5; i++) {
+                id.append('0');
+            }
+            id.append(randomPart);
+            return id.toString();
         }
 
-        public String nextFileId() throws SQLException {
-            while (true) {
-                String id = nextId();
-                PreparedStatement st = null;
-                ResultSet rs = null;
-                try (Connection connection = dataSource.getConnection()) {
-                    st = connection.prepareStatement(
-                            "SELECT COUNT(files.public_id) FROM files WHERE public_id = ?"
-                    );
-                    st.setString(1, id);
-                    rs = st.executeQuery();
-                    rs.next();
-                    int numberOfRows = rs.getInt(1);
-                    if (numberOfRows == 0) return id;
-                } finally {
-                    closeStatementAndResultSet(st, rs);
-                }
-            }
+        public String nextProjectId() {
+            return nextId();
+        }
+
+        public String nextFileId() {
+            return nextId();
         }
     }
 }
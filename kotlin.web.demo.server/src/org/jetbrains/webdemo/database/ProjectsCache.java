@@ -0,0 +1,133 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.database;
+
+import org.jetbrains.webdemo.ApplicationSettings;
+
+import java.util.*;
+
+/**
+ * Serialized content of projects loaded by public id. Shared projects are loaded much more often than changed,
+ * so they are kept until one of the project's files or the project itself is changed, but not longer than
+ * {@link ApplicationSettings#PROJECTS_CACHE_TTL}: projects can be changed through other server instances.
+ * Total size of cached content is limited, least recently used projects are evicted first.
+ */
+class ProjectsCache {
+    private final Map<String, Entry> projects = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, String> fileProjects = new HashMap<>();
+    private long size = 0;
+    private long generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+
+    /**
+     * @return cached content or null, in which case the content should be loaded and passed to {@link #put}
+     * with the generation returned by {@link #getGeneration()} before loading
+     */
+    public synchronized String get(String projectId) {
+        Entry entry = projects.get(projectId);
+        if (entry != null) {
+            if (System.currentTimeMillis() - entry.loadTime < ApplicationSettings.PROJECTS_CACHE_TTL) {
+                hits++;
+                return entry.content;
+            }
+            remove(projectId);
+            expirations++;
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Content is not cached if anything was invalidated while it was loaded, as it could be loaded before the change.
+     */
+    public synchronized void put(String projectId, String content, List<String> fileIds, long loadGeneration) {
+        long contentSize = content.length() * 2;
+        if (loadGeneration != generation || contentSize > ApplicationSettings.PROJECTS_CACHE_SIZE) {
+            return;
+        }
+        remove(projectId);
+        projects.put(projectId, new Entry(content, fileIds, System.currentTimeMillis()));
+        for (String fileId : fileIds) {
+            fileProjects.put(fileId, projectId);
+        }
+        size += contentSize;
+        Iterator<Map.Entry<String, Entry>> iterator = projects.entrySet().iterator();
+        while (size > ApplicationSettings.PROJECTS_CACHE_SIZE && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            removeFiles(eldest.getValue());
+            evictions++;
+        }
+    }
+
+    public synchronized void invalidateProject(String projectId) {
+        generation++;
+        remove(projectId);
+    }
+
+    public synchronized void invalidateFile(String fileId) {
+        generation++;
+        String projectId = fileProjects.get(fileId);
+        if (projectId != null) {
+            remove(projectId);
+        }
+    }
+
+    public synchronized Map<String, Long> getStatistics() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("projects", (long) projects.size());
+        result.put("size", size);
+        result.put("hits", hits);
+        result.put("misses", misses);
+        result.put("evictions", evictions);
+        result.put("expirations", expirations);
+        return result;
+    }
+
+    private void remove(String projectId) {
+        Entry entry = projects.remove(projectId);
+        if (entry != null) {
+            removeFiles(entry);
+        }
+    }
+
+    private void removeFiles(Entry entry) {
+        size -= entry.content.length() * 2;
+        for (String fileId : entry.fileIds) {
+            fileProjects.remove(fileId);
+        }
+    }
+
+    private static class Entry {
+        private final String content;
+        private final List<String> fileIds;
+        private final long loadTime;
+
+        private Entry(String content, List<String> fileIds, long loadTime) {
+            this.content = content;
+            this.fileIds = fileIds;
+            this.loadTime = loadTime;
+        }
+    }
+}
@@ -17,6 +17,8 @@
 package org.jetbrains.webdemo.examples;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.jetbrains.webdemo.CachedResponse;
+import org.jetbrains.webdemo.JsonUtils;
 import org.jetbrains.webdemo.Project;
 import org.jetbrains.webdemo.ProjectFile;
 
@@ -25,6 +27,7 @@ import java.util.List;
 
 public class Example extends Project{
     private List<ProjectFile> hiddenFiles = new ArrayList<>();
+    private CachedResponse response;
 
     public Example(
             String id,
@@ -46,4 +49,15 @@ public class Example extends Project{
         return hiddenFiles;
     }
 
+    /**
+     * Examples don't change until they are reloaded, so the serialized example is kept with it.
+     */
+    @JsonIgnore
+    public synchronized CachedResponse getResponse() {
+        if (response == null) {
+            response = new CachedResponse(JsonUtils.toJson(this));
+        }
+        return response;
+    }
+
 }
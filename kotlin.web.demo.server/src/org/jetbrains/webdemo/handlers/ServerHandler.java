@@ -21,7 +21,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.webdemo.ApplicationSettings;
 import org.jetbrains.webdemo.ErrorWriter;
+import org.jetbrains.webdemo.JsonUtils;
 import org.jetbrains.webdemo.ResponseUtils;
+import org.jetbrains.webdemo.database.MySqlConnector;
 import org.jetbrains.webdemo.help.HelpLoader;
 import org.jetbrains.webdemo.session.SessionInfo;
 import org.jetbrains.webdemo.session.UserInfo;
@@ -33,6 +35,8 @@ import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ServerHandler {
 
@@ -48,6 +52,8 @@ public class ServerHandler {
             }
         } else if (!ResponseUtils.isOriginAccepted(request)) {
             ErrorWriter.ERROR_WRITER.writeInfo(request.getHeader("Origin") + " try to connect to server");
+        } else if (request.getQueryString() != null && request.getQueryString().equals("stats")) {
+            sendStatistics(request, response);
         } else {
             SessionInfo sessionInfo;
             try {
@@ -94,6 +100,13 @@ public class ServerHandler {
         }
     }
 
+    private void sendStatistics(HttpServletRequest request, HttpServletResponse response) {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("projectsCache", MySqlConnector.getInstance().getProjectsCacheStatistics());
+        statistics.put("fileSaves", MySqlConnector.getInstance().getFileSavesStatistics());
+        writeResponse(request, response, JsonUtils.toJson(statistics), HttpServletResponse.SC_OK);
+    }
+
     private void sendSessionInfo(HttpServletRequest request, HttpServletResponse response, SessionInfo sessionInfo) {
         try {
             String id = sessionInfo.getId();
@@ -139,7 +152,12 @@ public class ServerHandler {
     }
 
     private void sendHelpContentForWords(HttpServletRequest request, final HttpServletResponse response) {
-        writeResponse(request, response, HelpLoader.getInstance().getHelpForWords(), 200);
+        try {
+            HelpLoader.getInstance().getHelpForWordsResponse().write(request, response, 0);
+        } catch (IOException e) {
+            //This is an exception we can't send data to client
+            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, "UNKNOWN", request.getHeader("Origin"), "null");
+        }
     }
 
 
@@ -19,6 +19,7 @@ package org.jetbrains.webdemo.help;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jetbrains.webdemo.CachedResponse;
 import org.jetbrains.webdemo.CommonSettings;
 import org.jetbrains.webdemo.ErrorWriter;
 import org.jetbrains.webdemo.ResponseUtils;
@@ -33,6 +34,7 @@ public class HelpLoader {
 
     private static StringBuilder response;
     private ArrayNode resultWords;
+    private CachedResponse helpForWordsResponse;
 
     private HelpLoader() {
         response = new StringBuilder();
@@ -53,6 +55,13 @@ public class HelpLoader {
         return resultWords.toString();
     }
 
+    public synchronized CachedResponse getHelpForWordsResponse() {
+        if (helpForWordsResponse == null) {
+            helpForWordsResponse = new CachedResponse(getHelpForWords());
+        }
+        return helpForWordsResponse;
+    }
+
     private String getTagValueWithInnerTags(String tag, Element element) {
         StringBuilder result = new StringBuilder();
         NodeList nodeList = element.getElementsByTagName(tag).item(0).getChildNodes();
@@ -107,8 +116,9 @@ public class HelpLoader {
         }
     }
 
-    private void generateHelpForWords() {
+    private synchronized void generateHelpForWords() {
         resultWords = new ArrayNode(JsonNodeFactory.instance);
+        helpForWordsResponse = null;
         try {
             File file = new File(CommonSettings.HELP_DIRECTORY + File.separator + ApplicationSettings.HELP_FOR_WORDS);
             Document doc = ResponseUtils.getXmlDocument(file);
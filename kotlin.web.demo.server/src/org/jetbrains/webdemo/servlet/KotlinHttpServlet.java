@@ -22,6 +22,7 @@ import org.jetbrains.webdemo.database.MySqlConnector;
 import org.jetbrains.webdemo.examples.ExamplesLoader;
 import org.jetbrains.webdemo.handlers.ServerHandler;
 import org.jetbrains.webdemo.help.HelpLoader;
+import org.jetbrains.webdemo.sessions.BackendBalancer;
 
 import javax.naming.InitialContext;
 import javax.naming.NameNotFoundException;
@@ -63,6 +64,7 @@ public class KotlinHttpServlet extends HttpServlet {
             ExamplesLoader.loadAllExamples();
             HelpLoader.getInstance();
             MySqlConnector.getInstance();
+            BackendBalancer.getInstance().initialize(ApplicationSettings.BACKEND_URLS);
         } catch (Throwable e) {
             ErrorWriter.writeExceptionToConsole("FATAL ERROR: Initialisation of java core environment failed, server didn't start", e);
             System.exit(1);
@@ -94,6 +96,50 @@ public class KotlinHttpServlet extends HttpServlet {
             }
 
             CommandRunner.setServerSettingFromTomcatConfig("backend_url", (String) envCtx.lookup("backend_url"));
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("backend_max_connections", (String) envCtx.lookup("backend_max_connections"));
+            } catch (NameNotFoundException e) {
+                //Absent backend_max_connections variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("backend_read_timeout", (String) envCtx.lookup("backend_read_timeout"));
+            } catch (NameNotFoundException e) {
+                //Absent backend_read_timeout variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("backend_health_check_interval", (String) envCtx.lookup("backend_health_check_interval"));
+            } catch (NameNotFoundException e) {
+                //Absent backend_health_check_interval variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("backend_session_pinning", (String) envCtx.lookup("backend_session_pinning"));
+            } catch (NameNotFoundException e) {
+                //Absent backend_session_pinning variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("static_content_max_age", (String) envCtx.lookup("static_content_max_age"));
+            } catch (NameNotFoundException e) {
+                //Absent static_content_max_age variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("projects_cache_size", (String) envCtx.lookup("projects_cache_size"));
+            } catch (NameNotFoundException e) {
+                //Absent projects_cache_size variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("projects_cache_ttl", (String) envCtx.lookup("projects_cache_ttl"));
+            } catch (NameNotFoundException e) {
+                //Absent projects_cache_ttl variable in context.xml
+            }
+            try {
+                CommandRunner.setServerSettingFromTomcatConfig("file_save_delay", (String) envCtx.lookup("file_save_delay"));
+            } catch (NameNotFoundException e) {
+                //Absent file_save_delay variable in context.xml
+            }
+            if (System.getProperty("http.maxConnections") == null) {
+                //Number of idle connections to every host kept alive by JDK
+                System.setProperty("http.maxConnections", String.valueOf(ApplicationSettings.BACKEND_MAX_CONNECTIONS));
+            }
             return true;
         } catch (Throwable e) {
             e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
@@ -111,6 +157,8 @@ public class KotlinHttpServlet extends HttpServlet {
     @Override
     public void destroy() {
         getServletContext().log("destroy() called");
+        BackendBalancer.getInstance().shutdown();
+        MySqlConnector.getInstance().shutdown();
     }
 
 }
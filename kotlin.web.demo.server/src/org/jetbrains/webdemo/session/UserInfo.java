@@ -23,6 +23,7 @@ public class UserInfo implements Serializable {
     private String id = "";
     private String type = "";
     private boolean isLogged = false;
+    private int databaseId = 0;
 
     public void login(String name, String id, String type) {
         isLogged = true;
@@ -38,6 +39,7 @@ public class UserInfo implements Serializable {
     public void logout() {
         name = "";
         id = "";
+        databaseId = 0;
         isLogged = false;
     }
 
@@ -53,4 +55,15 @@ public class UserInfo implements Serializable {
         return type;
     }
 
+    /**
+     * @return id of the user row in database or 0 if it wasn't resolved yet
+     */
+    public int getDatabaseId() {
+        return databaseId;
+    }
+
+    public void setDatabaseId(int databaseId) {
+        this.databaseId = databaseId;
+    }
+
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.sessions;
+
+import org.jetbrains.webdemo.ApplicationSettings;
+import org.jetbrains.webdemo.ErrorWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses compile backend for every request: the one with the least number of outstanding requests.
+ * Backends are checked by "?test" request periodically. Backend which doesn't answer the check in time
+ * or fails several requests in a row doesn't get requests until it passes the check again.
+ * If session pinning is enabled, requests of one session go to the same backend while it is healthy,
+ * so per-session caches of the backend are used.
+ */
+public class BackendBalancer {
+    private static final BackendBalancer INSTANCE = new BackendBalancer();
+    private static final int MAX_FAILURES_IN_A_ROW = 3;
+    private static final int HEALTH_CHECK_TIMEOUT = 2000;
+    private static final int MAX_PINNED_SESSIONS = 10000;
+
+    private volatile List<Backend> backends = Collections.emptyList();
+    private final Map<String, Backend> pinnedSessions = new LinkedHashMap<String, Backend>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Backend> eldest) {
+            return size() > MAX_PINNED_SESSIONS;
+        }
+    };
+    private ScheduledExecutorService healthChecker;
+
+    private BackendBalancer() {
+    }
+
+    public static BackendBalancer getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void initialize(List<String> urls) {
+        List<Backend> newBackends = new ArrayList<>();
+        for (String url : urls) {
+            newBackends.add(new Backend(url));
+        }
+        backends = Collections.unmodifiableList(newBackends);
+        if (healthChecker == null) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "backends-health-check");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            healthChecker.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    for (Backend backend : backends) {
+                        backend.check();
+                    }
+                }
+            }, 0, ApplicationSettings.BACKEND_HEALTH_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void shutdown() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+            healthChecker = null;
+        }
+    }
+
+    /**
+     * Chooses backend for the request, {@link #release} must be called after the request is processed.
+     * If all backends are ejected, the least loaded of them is chosen anyway.
+     */
+    public Backend acquire(String sessionId) {
+        Backend result = null;
+        if (ApplicationSettings.BACKEND_SESSION_PINNING && sessionId != null) {
+            synchronized (pinnedSessions) {
+                Backend pinned = pinnedSessions.get(sessionId);
+                if (pinned != null && pinned.healthy && backends.contains(pinned)) {
+                    result = pinned;
+                }
+            }
+        }
+        if (result == null) {
+            result = getLeastLoaded(true);
+            if (result == null) {
+                result = getLeastLoaded(false);
+            }
+            if (result != null && ApplicationSettings.BACKEND_SESSION_PINNING && sessionId != null) {
+                synchronized (pinnedSessions) {
+                    pinnedSessions.put(sessionId, result);
+                }
+            }
+        }
+        if (result != null) {
+            result.outstanding.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * @param failed backend didn't answer or answered with internal error
+     */
+    public void release(Backend backend, boolean failed) {
+        backend.outstanding.decrementAndGet();
+        if (!failed) {
+            backend.failures.set(0);
+        } else if (backend.failures.incrementAndGet() >= MAX_FAILURES_IN_A_ROW && backend.healthy) {
+            backend.healthy = false;
+            ErrorWriter.writeInfoToConsole("Backend " + backend.url + " is ejected after " + MAX_FAILURES_IN_A_ROW + " failed requests");
+        }
+    }
+
+    private Backend getLeastLoaded(boolean healthyOnly) {
+        Backend result = null;
+        for (Backend backend : backends) {
+            if (healthyOnly && !backend.healthy) continue;
+            if (result == null || backend.outstanding.get() < result.outstanding.get()) {
+                result = backend;
+            }
+        }
+        return result;
+    }
+
+    public static class Backend {
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        private Backend(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        private void check() {
+            boolean passed = false;
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) new URL("http://" + url + "/?test").openConnection();
+                connection.setConnectTimeout(HEALTH_CHECK_TIMEOUT);
+                connection.setReadTimeout(HEALTH_CHECK_TIMEOUT);
+                connection.setUseCaches(false);
+                passed = connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+                try (InputStream inputStream = connection.getInputStream()) {
+                    while (inputStream.read() != -1) {
+                        //Skip the body, so the connection is reused
+                    }
+                }
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+            if (passed) {
+                failures.set(0);
+                if (!healthy) {
+                    healthy = true;
+                    ErrorWriter.writeInfoToConsole("Backend " + url + " is back after successful health check");
+                }
+            } else if (healthy) {
+                healthy = false;
+                ErrorWriter.writeInfoToConsole("Backend " + url + " is ejected after failed health check");
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.sessions;
+
+import org.jetbrains.webdemo.ApplicationSettings;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connections from the frontend server to compile backends.
+ * JDK keeps connections alive and reuses them as long as every response body is read to the end,
+ * so response is always drained on {@link BackendResponse#close()}. Number of simultaneous connections
+ * to one backend is limited: requests above the limit wait for a free connection instead of opening new sockets.
+ */
+public class BackendConnector {
+    private static final BackendConnector INSTANCE = new BackendConnector();
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final Set<String> NOT_FORWARDED_HEADERS = new HashSet<>(Arrays.asList(
+            "host", "connection", "keep-alive", "proxy-connection", "te", "trailer", "transfer-encoding", "upgrade",
+            "content-length", "content-type", "accept-encoding"
+    ));
+
+    private final Map<String, Semaphore> connections = new HashMap<>();
+
+    private BackendConnector() {
+    }
+
+    public static BackendConnector getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sends the request with the given body to the backend, headers and query string of the client request are passed as is.
+     * Body is written directly to the connection in chunks.
+     *
+     * @return response of the backend or null if there was no free connection to the backend during connect timeout
+     */
+    public BackendResponse forward(String backendUrl, HttpServletRequest request, String contentType, RequestBody body)
+            throws IOException, InterruptedException {
+        Semaphore backendConnections = getConnections(backendUrl);
+        if (!backendConnections.tryAcquire(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        HttpURLConnection connection = null;
+        try {
+            URL url = new URL("http://" + backendUrl + "/" + (request.getQueryString() != null ? "?" + request.getQueryString() : ""));
+            connection = (HttpURLConnection) url.openConnection();
+
+            Enumeration<String> headers = request.getHeaderNames();
+            while (headers.hasMoreElements()) {
+                String header = headers.nextElement();
+                if (NOT_FORWARDED_HEADERS.contains(header.toLowerCase())) continue;
+                Enumeration<String> values = request.getHeaders(header);
+                while (values.hasMoreElements()) {
+                    connection.addRequestProperty(header, values.nextElement());
+                }
+            }
+            connection.setRequestProperty("Content-Type", contentType);
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(ApplicationSettings.BACKEND_READ_TIMEOUT);
+            connection.setUseCaches(false);
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(CHUNK_SIZE);
+            try (OutputStream requestBody = connection.getOutputStream()) {
+                body.writeTo(requestBody);
+            }
+            return new BackendResponse(connection, connection.getResponseCode(), backendConnections);
+        } catch (IOException | RuntimeException e) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            backendConnections.release();
+            throw e;
+        }
+    }
+
+    private synchronized Semaphore getConnections(String backendUrl) {
+        Semaphore semaphore = connections.get(backendUrl);
+        if (semaphore == null) {
+            semaphore = new Semaphore(ApplicationSettings.BACKEND_MAX_CONNECTIONS, true);
+            connections.put(backendUrl, semaphore);
+        }
+        return semaphore;
+    }
+
+    public interface RequestBody {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    public static class BackendResponse implements Closeable {
+        private final HttpURLConnection connection;
+        private final int status;
+        private final Semaphore backendConnections;
+        private InputStream body;
+        private boolean closed = false;
+
+        private BackendResponse(HttpURLConnection connection, int status, Semaphore backendConnections) {
+            this.connection = connection;
+            this.status = status;
+            this.backendConnections = backendConnections;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        public String getContentType() {
+            return connection.getContentType();
+        }
+
+        /**
+         * @return body of the response or error body if status code is 400 or greater, null if there is no body
+         */
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = status >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream() : connection.getInputStream();
+            }
+            return body;
+        }
+
+        public String readBody() throws IOException {
+            InputStream inputStream = getBody();
+            if (inputStream == null) {
+                return "";
+            }
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                result.write(buffer, 0, read);
+            }
+            return result.toString("UTF-8");
+        }
+
+        /**
+         * Drains the rest of the body, so the connection goes back to the keep-alive cache.
+         */
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            try (InputStream inputStream = getBody()) {
+                if (inputStream != null) {
+                    byte[] buffer = new byte[8 * 1024];
+                    while (inputStream.read(buffer) != -1) {
+                        //Skip the rest of the response
+                    }
+                }
+            } catch (IOException e) {
+                connection.disconnect();
+            } finally {
+                backendConnections.release();
+            }
+        }
+    }
+}
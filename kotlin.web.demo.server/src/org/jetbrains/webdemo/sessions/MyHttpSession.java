@@ -16,6 +16,7 @@
 
 package org.jetbrains.webdemo.sessions;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -24,6 +25,7 @@ import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.webdemo.*;
 import org.jetbrains.webdemo.database.DatabaseOperationException;
 import org.jetbrains.webdemo.database.MySqlConnector;
+import org.jetbrains.webdemo.examples.Example;
 import org.jetbrains.webdemo.examples.ExamplesFolder;
 import org.jetbrains.webdemo.examples.ExamplesUtils;
 import org.jetbrains.webdemo.handlers.ServerHandler;
@@ -35,13 +37,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
-import java.net.URL;
-import java.net.URLEncoder;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MyHttpSession {
     private final SessionInfo sessionInfo;
@@ -49,6 +48,8 @@ public class MyHttpSession {
     private HttpServletRequest request;
     private HttpServletResponse response;
     private ObjectMapper objectMapper = new ObjectMapper();
+    //Resources are packed with the application and don't change until it is redeployed
+    private static final Map<String, CachedResponse> resources = new ConcurrentHashMap<>();
 
     public MyHttpSession(SessionInfo info) {
         this.sessionInfo = info;
@@ -149,7 +150,7 @@ public class MyHttpSession {
 
     private void forwardConvertResult() {
         sessionInfo.setType(SessionInfo.TypeOfRequest.CONVERT_TO_KOTLIN);
-        Map<String, String> postParameters = new HashMap<>();
+        Map<String, Object> postParameters = new HashMap<>();
         postParameters.put("text", request.getParameter("text"));
         forwardRequestToBackend(request, postParameters);
     }
@@ -161,8 +162,8 @@ public class MyHttpSession {
             sessionInfo.setRunConfiguration(currentProject.confType);
             ExamplesUtils.addUnmodifiableFilesToProject(currentProject);
             ExamplesUtils.addHiddenFilesToProject(currentProject);
-            Map<String, String> postParameters = new HashMap<>();
-            postParameters.put("project", objectMapper.writeValueAsString(currentProject));
+            Map<String, Object> postParameters = new HashMap<>();
+            postParameters.put("project", currentProject);
             postParameters.put("filename", request.getParameter("filename"));
             postParameters.put("line", request.getParameter("line"));
             postParameters.put("ch", request.getParameter("ch"));
@@ -181,8 +182,8 @@ public class MyHttpSession {
             sessionInfo.setRunConfiguration(currentProject.confType);
             ExamplesUtils.addHiddenFilesToProject(currentProject);
             ExamplesUtils.addUnmodifiableFilesToProject(currentProject);
-            Map<String, String> postParameters = new HashMap<>();
-            postParameters.put("project", objectMapper.writeValueAsString(currentProject));
+            Map<String, Object> postParameters = new HashMap<>();
+            postParameters.put("project", currentProject);
             forwardRequestToBackend(request, postParameters);
         } catch (IOException e) {
             writeResponse("Can't parse project", HttpServletResponse.SC_BAD_REQUEST);
@@ -198,8 +199,8 @@ public class MyHttpSession {
             sessionInfo.setRunConfiguration(currentProject.confType);
             ExamplesUtils.addHiddenFilesToProject(currentProject);
             ExamplesUtils.addUnmodifiableFilesToProject(currentProject);
-            Map<String, String> postParameters = new HashMap<>();
-            postParameters.put("project", objectMapper.writeValueAsString(currentProject));
+            Map<String, Object> postParameters = new HashMap<>();
+            postParameters.put("project", currentProject);
             forwardRequestToBackend(request, postParameters);
         } catch (IOException e) {
             writeResponse("Can't parse project", HttpServletResponse.SC_BAD_REQUEST);
@@ -208,89 +209,93 @@ public class MyHttpSession {
         }
     }
 
-    private void forwardRequestToBackend(HttpServletRequest request, Map<String, String> postParameters) {
-        final boolean hasoutbody = (request.getMethod().equals("POST"));
-
+    /**
+     * Parameters are sent to the backend as fields of JSON object in the request body,
+     * the project is serialized directly to the connection.
+     */
+    private void forwardRequestToBackend(HttpServletRequest request, final Map<String, Object> postParameters) {
         try {
-            final URL url = new URL("http://" + ApplicationSettings.BACKEND_URL + "/"
-                    + (request.getQueryString() != null ? "?" + request.getQueryString() : ""));
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-
-            final Enumeration<String> headers = request.getHeaderNames();
-            while (headers.hasMoreElements()) {
-                final String header = headers.nextElement();
-                final Enumeration<String> values = request.getHeaders(header);
-                while (values.hasMoreElements()) {
-                    final String value = values.nextElement();
-                    conn.addRequestProperty(header, value);
-                }
-            }
-
-            conn.setRequestMethod("POST");
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(10000);
-            conn.setUseCaches(false);
-            conn.setDoOutput(hasoutbody);
-
-            try (OutputStream requestBody = conn.getOutputStream()) {
-                boolean first = true;
-                for (String key : postParameters.keySet()) {
-                    if (first) {
-                        first = false;
-                    } else {
-                        requestBody.write('&');
-                    }
-                    requestBody.write(URLEncoder.encode(key, "UTF8").getBytes());
-                    requestBody.write('=');
-                    requestBody.write(URLEncoder.encode(postParameters.get(key), "UTF8").getBytes());
-                }
-            }
-
-            StringBuilder responseBody = new StringBuilder();
-            if (conn.getResponseCode() >= 400) {
-                StringBuilder serverMessage = new StringBuilder();
-                try (InputStream errorStream = conn.getErrorStream()) {
-                    if (errorStream != null) {
-                        byte[] buffer = new byte[1024];
-                        while (true) {
-                            final int read = errorStream.read(buffer);
-                            if (read <= 0) break;
-                            serverMessage.append(new String(buffer, 0, read));
+            BackendConnector.RequestBody requestBody = new BackendConnector.RequestBody() {
+                @Override
+                public void writeTo(OutputStream output) throws IOException {
+                    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+                        generator.writeStartObject();
+                        for (Map.Entry<String, Object> parameter : postParameters.entrySet()) {
+                            generator.writeObjectField(parameter.getKey(), parameter.getValue());
                         }
+                        generator.writeEndObject();
                     }
                 }
-
-
-                switch (conn.getResponseCode()) {
-                    case HttpServletResponse.SC_NOT_FOUND:
-                        responseBody.append("Kotlin compile server not found");
-                        break;
-                    case HttpServletResponse.SC_SERVICE_UNAVAILABLE:
-                        responseBody.append("Kotlin compile server is temporary overloaded");
-                        break;
-                    default:
-                        responseBody = serverMessage;
-                        break;
-                }
-            } else {
-                try (InputStream inputStream = conn.getInputStream()) {
-                    if (inputStream != null) {
-                        byte[] buffer = new byte[1024];
-                        while (true) {
-                            final int read = inputStream.read(buffer);
-                            if (read <= 0) break;
-                            responseBody.append(new String(buffer, 0, read));
-                        }
+            };
+            BackendBalancer.Backend backend = BackendBalancer.getInstance().acquire(sessionInfo.getId());
+            if (backend == null) {
+                writeResponse("Kotlin compile server not found", HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            boolean failed = true;
+            try (BackendConnector.BackendResponse backendResponse = BackendConnector.getInstance().forward(backend.getUrl(),
+                    request, "application/json;charset=utf-8", requestBody)) {
+                if (backendResponse == null) {
+                    failed = false;
+                    writeResponse("Kotlin compile server is temporary overloaded", HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                } else if (backendResponse.getStatus() >= 400) {
+                    failed = backendResponse.getStatus() == HttpServletResponse.SC_NOT_FOUND ||
+                            backendResponse.getStatus() == HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                    switch (backendResponse.getStatus()) {
+                        case HttpServletResponse.SC_NOT_FOUND:
+                            writeResponse("Kotlin compile server not found", backendResponse.getStatus());
+                            break;
+                        case HttpServletResponse.SC_SERVICE_UNAVAILABLE:
+                            if (backendResponse.getHeader("Retry-After") != null) {
+                                response.setHeader("Retry-After", backendResponse.getHeader("Retry-After"));
+                            }
+                            writeResponse("Kotlin compile server is temporary overloaded", backendResponse.getStatus());
+                            break;
+                        default:
+                            writeResponse(backendResponse.readBody(), backendResponse.getStatus());
+                            break;
                     }
+                } else {
+                    failed = false;
+                    passResponse(backendResponse, "true".equals(request.getParameter("stream")));
                 }
+            } finally {
+                BackendBalancer.getInstance().release(backend, failed);
             }
-            writeResponse(responseBody.toString(), conn.getResponseCode());
         } catch (SocketTimeoutException e) {
             writeResponse("Compile server connection timeout", HttpServletResponse.SC_GATEWAY_TIMEOUT);
         } catch (Exception e) {
             ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, "FORWARD_REQUEST_TO_BACKEND", "", "Can't forward request to Kotlin compile server");
-            writeResponse("Can't send your request to Kotlin compile server", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            if (!response.isCommitted()) {
+                writeResponse("Can't send your request to Kotlin compile server", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    /**
+     * Copies the backend response to the client without decoding it.
+     * Streamed response is sent to the client as soon as every chunk is received.
+     */
+    private void passResponse(BackendConnector.BackendResponse backendResponse, boolean streaming) throws IOException {
+        ResponseUtils.addHeadersToResponse(request, response);
+        response.setStatus(backendResponse.getStatus());
+        if (backendResponse.getContentType() != null) {
+            response.setContentType(backendResponse.getContentType());
         }
+        InputStream inputStream = backendResponse.getBody();
+        if (inputStream != null) {
+            OutputStream outputStream = response.getOutputStream();
+            byte[] buffer = new byte[8 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+                if (streaming) {
+                    outputStream.flush();
+                }
+            }
+            outputStream.flush();
+        }
+        logRequestInfo(backendResponse.getStatus());
     }
 
     private void sendFileExistenceResult() {
@@ -437,7 +442,8 @@ public class MyHttpSession {
             } else {
                 myProgramsContent.putArray("projects");
             }
-            writeResponse(responseBody.toString(), HttpServletResponse.SC_OK);
+            //List contains projects of the user, so it is revalidated on every request
+            writeCachedResponse(new CachedResponse(responseBody.toString()), 0);
         } catch (DatabaseOperationException e) {
             writeResponse(e.getMessage(), HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         }
@@ -529,10 +535,9 @@ public class MyHttpSession {
 
     private void sendExampleContent() {
         try {
-            Project example = ExamplesUtils.getExample(request.getParameter("publicId"));
-            writeResponse(objectMapper.writeValueAsString(example), HttpServletResponse.SC_OK);
-        } catch (IOException e) {
-            writeResponse("Can't write response", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            Example example = ExamplesUtils.getExample(request.getParameter("publicId"));
+            //Examples change when they are reloaded and their urls stay the same
+            writeCachedResponse(example.getResponse(), 0);
         } catch (NullPointerException e) {
             writeResponse("Can't find example", HttpServletResponse.SC_BAD_REQUEST);
         }
@@ -560,26 +565,40 @@ public class MyHttpSession {
     private void writeResponse(String responseBody, int statusCode) {
         try {
             ResponseUtils.writeResponse(request, response, responseBody, statusCode);
-            if (currentProject != null) {
-                LogWriter.logRequestInfo(
-                        sessionInfo.getId(),
-                        sessionInfo.getType(),
-                        statusCode,
-                        "runConf=" + currentProject.confType + " time=" + sessionInfo.getTimeManager().getMillisecondsFromStart()
-                );
-            } else {
-                LogWriter.logRequestInfo(
-                        sessionInfo.getId(),
-                        sessionInfo.getType(),
-                        statusCode,
-                        "time=" + sessionInfo.getTimeManager().getMillisecondsFromStart() + " request=" + request.getRequestURI() + "?" + request.getQueryString());
-            }
+            logRequestInfo(statusCode);
         } catch (IOException e) {
             //This is an exception we can't send data to client
             ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, sessionInfo.getType(), sessionInfo.getOriginUrl(), JsonUtils.toJson(currentProject));
         }
     }
 
+    private void writeCachedResponse(CachedResponse cachedResponse, int maxAge) {
+        try {
+            cachedResponse.write(request, response, maxAge);
+            logRequestInfo(response.getStatus());
+        } catch (IOException e) {
+            //This is an exception we can't send data to client
+            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e, sessionInfo.getType(), sessionInfo.getOriginUrl(), JsonUtils.toJson(currentProject));
+        }
+    }
+
+    private void logRequestInfo(int statusCode) {
+        if (currentProject != null) {
+            LogWriter.logRequestInfo(
+                    sessionInfo.getId(),
+                    sessionInfo.getType(),
+                    statusCode,
+                    "runConf=" + currentProject.confType + " time=" + sessionInfo.getTimeManager().getMillisecondsFromStart()
+            );
+        } else {
+            LogWriter.logRequestInfo(
+                    sessionInfo.getId(),
+                    sessionInfo.getType(),
+                    statusCode,
+                    "time=" + sessionInfo.getTimeManager().getMillisecondsFromStart() + " request=" + request.getRequestURI() + "?" + request.getQueryString());
+        }
+    }
+
 
     private void sendResourceFile() {
         String path = request.getRequestURI() + "?" + request.getQueryString();
@@ -596,47 +615,49 @@ public class MyHttpSession {
             return;
         } else if (path.equals("/") || path.equals("/index.html")) {
             path = "/index.html";
-            StringBuilder responseStr = new StringBuilder();
-            try (InputStream is = ServerHandler.class.getResourceAsStream(path)) {
-                responseStr.append(ResponseUtils.readData(is, true));
-            } catch (FileNotFoundException e) {
-                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
-                        SessionInfo.TypeOfRequest.GET_RESOURCE.name(), request.getHeader("Origin"), "index.html not found");
-                writeResponse("Cannot open this page", HttpServletResponse.SC_BAD_GATEWAY);
-                return;
-            } catch (IOException e) {
-                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
-                        SessionInfo.TypeOfRequest.GET_RESOURCE.name(), request.getHeader("Origin"), "index.html not found");
-                writeResponse("Cannot open this page", HttpServletResponse.SC_BAD_GATEWAY);
-                return;
-            }
-
-            try (OutputStream os = response.getOutputStream()) {
-                os.write(responseStr.toString().getBytes());
-            } catch (IOException e) {
-                //This is an exception we can't send data to client
+            CachedResponse indexPage = resources.get(path);
+            if (indexPage == null) {
+                try (InputStream is = ServerHandler.class.getResourceAsStream(path)) {
+                    if (is == null) {
+                        throw new FileNotFoundException(path);
+                    }
+                    indexPage = new CachedResponse(ResponseUtils.readData(is, true));
+                    resources.put(path, indexPage);
+                } catch (IOException e) {
+                    ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
+                            SessionInfo.TypeOfRequest.GET_RESOURCE.name(), request.getHeader("Origin"), "index.html not found");
+                    writeResponse("Cannot open this page", HttpServletResponse.SC_BAD_GATEWAY);
+                    return;
+                }
             }
+            //Index page refers to the current versions of scripts, so it is revalidated on every request
+            writeCachedResponse(indexPage, 0);
             return;
         }
 
-        InputStream is = ServerHandler.class.getResourceAsStream(path);
-        if (is == null) {
-            if (request.getQueryString() != null) {
-                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(
-                        new UnsupportedOperationException("Broken path to resource"),
+        CachedResponse resource = resources.get(path);
+        if (resource == null) {
+            try (InputStream is = ServerHandler.class.getResourceAsStream(path)) {
+                if (is == null) {
+                    if (request.getQueryString() != null) {
+                        ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(
+                                new UnsupportedOperationException("Broken path to resource"),
+                                SessionInfo.TypeOfRequest.GET_RESOURCE.name(), request.getHeader("Origin"), request.getRequestURI() + "?" + request.getQueryString());
+                    }
+                    writeResponse(("Resource not found. " + path), HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
+                resource = new CachedResponse(FileUtil.loadBytes(is));
+                resources.put(path, resource);
+            } catch (IOException e) {
+                ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
                         SessionInfo.TypeOfRequest.GET_RESOURCE.name(), request.getHeader("Origin"), request.getRequestURI() + "?" + request.getQueryString());
+                writeResponse("Could not load the resource from the server", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                return;
             }
-            writeResponse(("Resource not found. " + path), HttpServletResponse.SC_NOT_FOUND);
-            return;
-        }
-
-        try {
-            FileUtil.copy(is, response.getOutputStream());
-        } catch (IOException e) {
-            ErrorWriter.ERROR_WRITER.writeExceptionToExceptionAnalyzer(e,
-                    SessionInfo.TypeOfRequest.GET_RESOURCE.name(), request.getHeader("Origin"), request.getRequestURI() + "?" + request.getQueryString());
-            writeResponse("Could not load the resource from the server", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         }
+        //Only resources with a version in the query string may be used without revalidation, other urls stay the same after redeploy
+        writeCachedResponse(resource, request.getQueryString() != null ? ApplicationSettings.STATIC_CONTENT_MAX_AGE : 0);
     }
 
 }
@@ -23,6 +23,8 @@ import org.jetbrains.webdemo.test.examples.HighlightExamplesTest;
 import org.jetbrains.webdemo.test.examples.RunExamplesTest;
 import org.jetbrains.webdemo.test.highlighting.HighlightingTest;
 import org.jetbrains.webdemo.test.j2kconverter.J2KConverterTest;
+import org.jetbrains.webdemo.test.run.ExecutorsPoolTest;
+import org.jetbrains.webdemo.test.run.ProgramOutputTest;
 import org.jetbrains.webdemo.test.run.RunTest;
 
 public class TestAll extends TestCase {
@@ -34,6 +36,8 @@ public class TestAll extends TestCase {
                 HighlightingTest.class,
                 CompletionTest.class,
                 RunTest.class,
+                ExecutorsPoolTest.class,
+                ProgramOutputTest.class,
                 J2KConverterTest.class
         );
         suite.addTest(HighlightExamplesTest.suite());
@@ -73,9 +73,6 @@ public class BaseTest extends TestCase {
     }
 
     protected KotlinCoreEnvironment createManager() {
-        myEnvironmentManager.getEnvironment();
-        Initializer.setEnvironmentManager(myEnvironmentManager);
-
         return myEnvironmentManager.getEnvironment();
     }
 
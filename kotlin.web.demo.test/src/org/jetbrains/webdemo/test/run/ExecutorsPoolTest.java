@@ -0,0 +1,153 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.test.run;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.webdemo.backend.BackendSessionInfo;
+import org.jetbrains.webdemo.backend.BackendSettings;
+import org.jetbrains.webdemo.backend.CompilationCache;
+import org.jetbrains.webdemo.backend.JetPsiFactoryUtil;
+import org.jetbrains.webdemo.backend.executor.ExecutorProcess;
+import org.jetbrains.webdemo.backend.executor.ExecutorResponse;
+import org.jetbrains.webdemo.backend.executor.ExecutorsPool;
+import org.jetbrains.webdemo.backend.executor.OutputListener;
+import org.jetbrains.webdemo.backend.responseHelpers.CompileAndRunExecutor;
+import org.jetbrains.webdemo.test.BaseTest;
+import org.jetbrains.webdemo.test.TestUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ExecutorsPoolTest extends BaseTest {
+    private int poolSize;
+    private int maxRuns;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        poolSize = BackendSettings.EXECUTORS_POOL_SIZE;
+        maxRuns = BackendSettings.EXECUTOR_MAX_RUNS;
+        //Leave room for released executor next to spare ones
+        BackendSettings.EXECUTORS_POOL_SIZE = 16;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        BackendSettings.EXECUTORS_POOL_SIZE = poolSize;
+        BackendSettings.EXECUTOR_MAX_RUNS = maxRuns;
+        super.tearDown();
+    }
+
+    public void testOutputFramesAndResult() throws Exception {
+        CompilationCache.CompilationResult compilation = compile("execution/FooOutErr.kt");
+        ExecutorsPool pool = ExecutorsPool.getInstance(BackendSessionInfo.RunConfiguration.JAVA);
+        ExecutorProcess executor = pool.acquire();
+        try {
+            StringBuilder out = new StringBuilder();
+            StringBuilder err = new StringBuilder();
+            ExecutorResponse response = run(executor, compilation, out, err);
+            assertEquals("Hello", out.toString().trim());
+            assertEquals("ERROR", err.toString().trim());
+            assertTrue(response.isReusable());
+            assertFalse(response.isOutputTooLong());
+            assertFalse(response.isCpuTimeLimitExceeded());
+            assertTrue(new ObjectMapper().readTree(response.getText()).get("exception").isNull());
+        } finally {
+            pool.release(executor);
+        }
+    }
+
+    public void testExecutorIsReused() throws Exception {
+        CompilationCache.CompilationResult compilation = compile("execution/FooOut.kt");
+        ExecutorsPool pool = ExecutorsPool.getInstance(BackendSessionInfo.RunConfiguration.JAVA);
+
+        ExecutorProcess executor = pool.acquire();
+        StringBuilder out = new StringBuilder();
+        run(executor, compilation, out, new StringBuilder());
+        assertEquals("Hello", out.toString().trim());
+        pool.release(executor);
+
+        ExecutorProcess reused = pool.acquire();
+        try {
+            assertSame(executor, reused);
+            assertTrue(reused.isAlive());
+            out.setLength(0);
+            run(reused, compilation, out, new StringBuilder());
+            assertEquals("Hello", out.toString().trim());
+            assertEquals(2, reused.getRunsCount());
+        } finally {
+            pool.release(reused);
+        }
+    }
+
+    public void testExecutorIsRecycledAfterMaxRuns() throws Exception {
+        BackendSettings.EXECUTOR_MAX_RUNS = 1;
+        CompilationCache.CompilationResult compilation = compile("execution/FooOut.kt");
+        ExecutorsPool pool = ExecutorsPool.getInstance(BackendSessionInfo.RunConfiguration.JAVA);
+
+        ExecutorProcess executor = pool.acquire();
+        run(executor, compilation, new StringBuilder(), new StringBuilder());
+        pool.release(executor);
+        assertFalse(executor.isAlive());
+
+        ExecutorProcess next = pool.acquire();
+        try {
+            assertNotSame(executor, next);
+        } finally {
+            pool.release(next);
+        }
+    }
+
+    public void testExecutorIsNotReusedWithThreadInParentGroup() throws Exception {
+        CompilationCache.CompilationResult compilation = compile("execution/ThreadInParentGroup.kt");
+        ExecutorsPool pool = ExecutorsPool.getInstance(BackendSessionInfo.RunConfiguration.JAVA);
+
+        ExecutorProcess executor = pool.acquire();
+        ExecutorResponse response = run(executor, compilation, new StringBuilder(), new StringBuilder());
+        assertFalse(response.isReusable());
+        pool.release(executor);
+        assertFalse(executor.isAlive());
+    }
+
+    private ExecutorResponse run(ExecutorProcess executor, CompilationCache.CompilationResult compilation,
+                                 final StringBuilder out, final StringBuilder err) throws Exception {
+        List<String> arguments = Collections.singletonList(compilation.getMainClass());
+        return executor.execute(ExecutorProcess.JAVA_COMMAND, compilation.getFiles(), arguments, new OutputListener() {
+            @Override
+            public void onOutput(int stream, CharSequence text) {
+                if (stream == ExecutorProcess.OUT_STREAM) {
+                    out.append(text);
+                } else {
+                    assertEquals(ExecutorProcess.ERR_STREAM, stream);
+                    err.append(text);
+                }
+            }
+        });
+    }
+
+    private CompilationCache.CompilationResult compile(String fileName) throws Exception {
+        BackendSessionInfo sessionInfo = new BackendSessionInfo("test", BackendSessionInfo.TypeOfRequest.RUN);
+        sessionInfo.setRunConfiguration("java");
+        PsiFile currentPsiFile = JetPsiFactoryUtil.createFile(getProject(), getProject().getName(), TestUtils.getDataFromFile(TestUtils.TEST_SRC, fileName));
+        List<PsiFile> files = Collections.singletonList(currentPsiFile);
+        new CompileAndRunExecutor(files, currentPsiFile.getProject(), sessionInfo, "").getResult();
+        CompilationCache.CompilationResult result = CompilationCache.getInstance().get(CompilationCache.getKey(files, BackendSessionInfo.RunConfiguration.JAVA));
+        assertNotNull(result);
+        return result;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2000-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.webdemo.test.run;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.webdemo.ResponseUtils;
+import org.jetbrains.webdemo.backend.BackendSessionInfo;
+import org.jetbrains.webdemo.backend.JetPsiFactoryUtil;
+import org.jetbrains.webdemo.backend.responseHelpers.CompileAndRunExecutor;
+import org.jetbrains.webdemo.test.BaseTest;
+import org.jetbrains.webdemo.test.TestUtils;
+
+import java.util.Collections;
+
+/**
+ * Output of user program is built from frames on the backend, the result must be the same as
+ * escaping the whole tagged output at once.
+ */
+public class ProgramOutputTest extends BaseTest {
+
+    public void test$execution$EscapedOutput() throws Exception {
+        String expectedOutput = ResponseUtils.escapeString(
+                "<outStream>tab\t\u0001 \"double\" 'single' <b>&amp;</b></outStream>" +
+                        "<errStream>\u041f\u0440\u0438\u0432\u0435\u0442 \u4f60\u597d \ud83d\ude00</errStream>" +
+                        "<outStream> & <\u00e9></outStream>");
+        assertEquals(expectedOutput, getOutput(TestUtils.getNameByTestName(this) + ".kt"));
+    }
+
+    public void test$execution$SplitOutput() throws Exception {
+        String expectedOutput = ResponseUtils.escapeString("<outStream>" +
+                StringUtil.repeatSymbol('a', 8191) + "\u0401" + StringUtil.repeatSymbol('a', 8189) + "\ud83d\ude00" +
+                "</outStream>");
+        assertEquals(expectedOutput, getOutput(TestUtils.getNameByTestName(this) + ".kt"));
+    }
+
+    private String getOutput(String fileName) throws Exception {
+        BackendSessionInfo sessionInfo = new BackendSessionInfo("test", BackendSessionInfo.TypeOfRequest.RUN);
+        sessionInfo.setRunConfiguration("java");
+        PsiFile currentPsiFile = JetPsiFactoryUtil.createFile(getProject(), getProject().getName(), TestUtils.getDataFromFile(TestUtils.TEST_SRC, fileName));
+        CompileAndRunExecutor responseForCompilation = new CompileAndRunExecutor(Collections.singletonList(currentPsiFile), currentPsiFile.getProject(), sessionInfo, "");
+        ArrayNode actualResult = (ArrayNode) new ObjectMapper().readTree(responseForCompilation.getResult());
+        for (JsonNode outputObject : actualResult) {
+            if (outputObject.get("type").asText().equals("out")) {
+                assertTrue(outputObject.get("exception").isNull());
+                return outputObject.get("text").asText();
+            }
+        }
+        fail("No output in " + actualResult);
+        return null;
+    }
+}
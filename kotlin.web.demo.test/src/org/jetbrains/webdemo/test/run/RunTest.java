@@ -21,6 +21,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.intellij.psi.PsiFile;
 import org.jetbrains.webdemo.backend.BackendSessionInfo;
+import org.jetbrains.webdemo.backend.CompilationCache;
 import org.jetbrains.webdemo.backend.JetPsiFactoryUtil;
 import org.jetbrains.webdemo.backend.responseHelpers.CompileAndRunExecutor;
 import org.jetbrains.webdemo.backend.responseHelpers.JsConverter;
@@ -66,6 +67,34 @@ public class RunTest extends BaseTest {
         compareResult(fileName, "", expectedResult, "java");
     }
 
+    public void test$execution$CompilationCache() throws Exception {
+        long hits = CompilationCache.getInstance().getStatistics().get("hits");
+        String expectedResult = "<outStream>Hello</br></outStream>";
+        compareResult("execution/FooOut.kt", "", expectedResult, "java");
+        compareResult("execution/FooOut.kt", "", expectedResult, "java");
+        assertTrue(CompilationCache.getInstance().getStatistics().get("hits") > hits);
+    }
+
+    public void test$execution$RunStatistics() throws Exception {
+        BackendSessionInfo sessionInfo = new BackendSessionInfo("test", BackendSessionInfo.TypeOfRequest.RUN);
+        sessionInfo.setRunConfiguration("java");
+        PsiFile currentPsiFile = JetPsiFactoryUtil.createFile(getProject(), getProject().getName(), TestUtils.getDataFromFile(TestUtils.TEST_SRC, "execution/FooOut.kt"));
+        CompileAndRunExecutor responseForCompilation = new CompileAndRunExecutor(Collections.singletonList(currentPsiFile), currentPsiFile.getProject(), sessionInfo, "");
+        ArrayNode actualResult = (ArrayNode) new ObjectMapper().readTree(responseForCompilation.getResult());
+        boolean hasOutput = false;
+        for (JsonNode outputObject : actualResult) {
+            if (outputObject.get("type").asText().equals("out")) {
+                hasOutput = true;
+                JsonNode statistics = outputObject.get("statistics");
+                assertTrue(statistics.get("cpuTime").asLong() >= 0);
+                assertTrue(statistics.get("peakHeap").asLong() > 0);
+                assertTrue(statistics.get("gcCount").asLong() >= 0);
+                assertTrue(statistics.get("wallTime").asLong() >= 0);
+            }
+        }
+        assertTrue(hasOutput);
+    }
+
     public void test$execution$Reflection() throws Exception {
         String expectedResult = "<outStream>Any</br>A</br>x</br></outStream>";
         String fileName = TestUtils.getNameByTestName(this) + ".kt";
@@ -0,0 +1,5 @@
+fun main(args : Array<String>) {
+    System.out!!.print("tab\t\u0001 \"double\" 'single' <b>&amp;</b>")
+    System.err!!.print("\u041f\u0440\u0438\u0432\u0435\u0442 \u4f60\u597d \ud83d\ude00")
+    System.out!!.print(" & <\u00e9>")
+}
@@ -0,0 +1,17 @@
+fun main(args : Array<String>) {
+    val out = System.out!!
+    //Byte writes fill the 8K output frame, so the frame ends inside "Ё" (D0 81)
+    for (i in 1..8191) {
+        out.write('a'.toInt())
+    }
+    out.write(0xD0)
+    out.write(0x81)
+    //Next frame ends inside "😀" (F0 9F 98 80)
+    for (i in 1..8189) {
+        out.write('a'.toInt())
+    }
+    out.write(0xF0)
+    out.write(0x9F)
+    out.write(0x98)
+    out.write(0x80)
+}
@@ -0,0 +1,8 @@
+fun main(args : Array<String>) {
+    val parent = Thread.currentThread().getThreadGroup()!!.getParent()
+    Thread(parent, object : Runnable {
+        override fun run() {
+            Thread.sleep(60000)
+        }
+    }).start()
+}